@@ -0,0 +1,105 @@
+package net.aquadc.fiftyshades;
+
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.NinePatch;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import static java.lang.Math.max;
+import static net.aquadc.fiftyshades.Numbers.ceil;
+import static net.aquadc.fiftyshades.Numbers.multiplyAlpha;
+
+/**
+ * Draws a patch rendered in background, or a flat shape without shadow until the patch is ready, or if rendering has failed.
+ */
+@RequiresApi(14) final class AsyncPatchDrawable extends Drawable implements PatchCache.Ready, Runnable {
+
+    private static Handler main;
+
+    private final PatchSpec spec;
+    private final Rect padding;
+    private final int width, height;
+    private volatile NinePatch patch;
+    private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+    private final RectF shape = new RectF();
+    private int alpha = 0xFF;
+
+    AsyncPatchDrawable(PatchSpec spec) {
+        this.spec = spec;
+        padding = spec.corners.padding(spec.paddings, new Rect());
+        int corner = max(spec.rect.cornerRadius, ceil(spec.rect.strokeWidth));
+        width = spec.corners.measureWidth(spec.paddings, corner, spec.shadow);
+        height = spec.corners.measureHeight(spec.paddings, corner, spec.shadow);
+    }
+
+    @Override public void ready(@Nullable NinePatch patch) {
+        if (patch == null) return; // failed, stay flat
+        this.patch = patch;
+        Handler main;
+        synchronized (AsyncPatchDrawable.class) {
+            main = AsyncPatchDrawable.main;
+            if (main == null) AsyncPatchDrawable.main = main = new Handler(Looper.getMainLooper());
+        }
+        main.post(this);
+    }
+    @Override public void run() {
+        invalidateSelf();
+    }
+
+    @Override public void draw(@NonNull Canvas canvas) {
+        Rect bounds = getBounds();
+        NinePatch patch = this.patch;
+        if (patch != null) {
+            paint.setAlpha(alpha);
+            patch.draw(canvas, bounds, paint);
+            return;
+        }
+
+        float alpha = this.alpha / 255f;
+        if ((spec.bgColor >>> 24) != 0) {
+            paint.setColor(multiplyAlpha(spec.bgColor, alpha));
+            canvas.drawRect(bounds, paint);
+        }
+        if (spec.rect.hasFill()) {
+            shape.set(bounds.left + padding.left, bounds.top + padding.top, bounds.right - padding.right, bounds.bottom - padding.bottom);
+            paint.setColor(multiplyAlpha(spec.rect.fillColor, alpha));
+            int cornerRadius = spec.rect.cornerRadius;
+            if (spec.corners == CornerSet.ALL) canvas.drawRoundRect(shape, cornerRadius, cornerRadius, paint);
+            else canvas.drawRect(shape, paint); // other sets are cut somewhere, the placeholder is rough anyway
+        }
+    }
+
+    @Override public int getIntrinsicWidth() { return width; }
+    @Override public int getIntrinsicHeight() { return height; }
+    @Override public boolean getPadding(@NonNull Rect padding) {
+        padding.set(this.padding);
+        return (padding.left | padding.top | padding.right | padding.bottom) != 0;
+    }
+
+    @Override public int getAlpha() { return alpha; }
+    @Override public void setAlpha(int alpha) {
+        if (this.alpha != alpha) {
+            this.alpha = alpha;
+            invalidateSelf();
+        }
+    }
+
+    @Nullable @Override public ColorFilter getColorFilter() { return paint.getColorFilter(); }
+    @Override public void setColorFilter(@Nullable ColorFilter colorFilter) {
+        paint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+}
@@ -0,0 +1,148 @@
+package net.aquadc.fiftyshades;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+import java.util.ArrayList;
+
+/**
+ * Pool of bitmaps released after patch generation, bucketed by allocation size.
+ * Pooled bitmaps are {@link Bitmap#reconfigure reconfigured} to serve requests of any size and config which fit,
+ * so regenerating patches of a changing appearance doesn't allocate.
+ * Register it via {@link android.content.Context#registerComponentCallbacks} to let it shrink on memory pressure.
+ */
+@RequiresApi(19) public final class BitmapPool implements ComponentCallbacks2 {
+
+    private static BitmapPool shared;
+
+    /**
+     * Returns process-wide pool limited to 1/64 of heap.
+     */
+    @NonNull public static synchronized BitmapPool shared() {
+        BitmapPool pool = shared;
+        return pool == null ? shared = new BitmapPool(Runtime.getRuntime().maxMemory() / 64) : pool;
+    }
+
+    /** Bucket i holds bitmaps of (2^(i-1); 2^i] bytes. */
+    private final ArrayList<Bitmap>[] buckets;
+    private final long maxBytes;
+    private long bytes;
+    private long hits, misses;
+    private int density = -1;
+
+    /**
+     * Constructs new pool.
+     * @param maxBytes maximum total allocation size of pooled bitmaps
+     */
+    public BitmapPool(long maxBytes) {
+        if (maxBytes < 0) throw new IllegalArgumentException("maxBytes must be >= 0, got " + maxBytes);
+        this.maxBytes = maxBytes;
+        //noinspection unchecked
+        buckets = new ArrayList[32];
+    }
+
+    /**
+     * Takes a transparent bitmap of the given size and config from the pool, or creates a new one.
+     */
+    @NonNull Bitmap get(int width, int height, @NonNull Bitmap.Config config) {
+        long needed = (long) width * height * bytesPerPixel(config);
+        Bitmap bitmap = null;
+        synchronized (this) {
+            for (int b = bucket(needed), end = Math.min(b + 2, buckets.length); b < end && bitmap == null; b++) {
+                ArrayList<Bitmap> bucket = buckets[b];
+                if (bucket != null) for (int i = bucket.size() - 1; i >= 0; i--) {
+                    Bitmap candidate = bucket.get(i);
+                    if (candidate.getAllocationByteCount() >= needed) {
+                        bucket.remove(i);
+                        bytes -= candidate.getAllocationByteCount();
+                        bitmap = candidate;
+                        break;
+                    }
+                }
+            }
+            if (bitmap == null) misses++;
+            else hits++;
+        }
+        if (bitmap == null) {
+            bitmap = Bitmap.createBitmap(width, height, config);
+            density = bitmap.getDensity();
+        } else {
+            bitmap.reconfigure(width, height, config);
+            bitmap.eraseColor(0);
+            if (density >= 0) bitmap.setDensity(density);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Gives the bitmap to the pool. It must be mutable and must not be used by the caller anymore.
+     * Bitmaps which don't fit into the pool are left for garbage collector.
+     */
+    public void put(@NonNull Bitmap bitmap) {
+        if (bitmap.isRecycled() || !bitmap.isMutable()) return;
+        int size = bitmap.getAllocationByteCount();
+        synchronized (this) {
+            if (bytes + size > maxBytes) return;
+            int b = bucket(size);
+            ArrayList<Bitmap> bucket = buckets[b];
+            if (bucket == null) buckets[b] = bucket = new ArrayList<>(2);
+            else for (int i = 0, s = bucket.size(); i < s; i++) if (bucket.get(i) == bitmap) return;
+            bucket.add(bitmap);
+            bytes += size;
+        }
+    }
+
+    private static int bucket(long bytes) {
+        return Math.min(31, 64 - Long.numberOfLeadingZeros(Math.max(0L, bytes - 1)));
+    }
+    private static int bytesPerPixel(Bitmap.Config config) {
+        switch (config) {
+            case ALPHA_8: return 1;
+            case RGB_565:
+            case ARGB_4444: return 2;
+            default: return 4;
+        }
+    }
+
+    // stats
+
+    /** Returns the number of requests served with pooled bitmaps. */
+    public synchronized long hitCount() { return hits; }
+    /** Returns the number of requests which required allocating a new bitmap. */
+    public synchronized long missCount() { return misses; }
+    /** Returns total allocation size of pooled bitmaps. */
+    public synchronized long byteCount() { return bytes; }
+    /** Returns the limit for {@link #byteCount()}. */
+    public long maxByteCount() { return maxBytes; }
+
+    /**
+     * Drops all pooled bitmaps.
+     */
+    public synchronized void evictAll() {
+        for (ArrayList<Bitmap> bucket : buckets) if (bucket != null) bucket.clear();
+        bytes = 0;
+    }
+
+    @Override public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_UI_HIDDEN || level == TRIM_MEMORY_RUNNING_LOW || level == TRIM_MEMORY_RUNNING_CRITICAL)
+            evictAll(); // pooled bitmaps are cheap to recreate, unlike cached patches
+    }
+    @Override public void onLowMemory() {
+        evictAll();
+    }
+    @Override public void onConfigurationChanged(@NonNull Configuration newConfig) {
+    }
+
+    @Override public String toString() {
+        long hits, misses, bytes;
+        synchronized (this) {
+            hits = this.hits;
+            misses = this.misses;
+            bytes = this.bytes;
+        }
+        return "BitmapPool(" + bytes + '/' + maxBytes + " bytes, " + hits + " hits, " + misses + " misses)";
+    }
+}
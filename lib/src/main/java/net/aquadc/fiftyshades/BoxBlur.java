@@ -0,0 +1,191 @@
+package net.aquadc.fiftyshades;
+
+import android.annotation.SuppressLint;
+import android.os.Build;
+import androidx.annotation.RequiresApi;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static java.lang.Math.min;
+import static java.lang.Math.round;
+
+/**
+ * Separable blur of 8-bit alpha masks. Three successive box blurs approximate a Gaussian one.
+ */
+final class BoxBlur {
+    private BoxBlur() {}
+
+    static final int PASSES = 3;
+
+    /** Below this number of pixels splitting work across threads costs more than the work itself. */
+    private static final int PARALLEL_THRESHOLD = 256 * 256;
+    /** Rows or columns per fork-join task. */
+    private static final int GRAIN = 32;
+
+    /** Mimics Skia's radius-to-sigma conversion used by {@link android.graphics.Paint#setShadowLayer}. */
+    static float sigma(float radius) {
+        return radius > 0f ? .57735f * radius + .5f : 0f;
+    }
+
+    /**
+     * Finds radii of {@link #PASSES} boxes approximating Gaussian with the given sigma.
+     * @return false if blurring is a no-op
+     */
+    static boolean boxRadii(float sigma, int[] radii) {
+        if (sigma <= 0f) return false;
+        double ideal = Math.sqrt(12 * sigma * sigma / PASSES + 1);
+        int lower = (int) ideal;
+        if ((lower & 1) == 0) lower--;
+        int upper = lower + 2;
+        int m = (int) round((12 * sigma * sigma - PASSES * lower * lower - 4 * PASSES * lower - 3 * PASSES) / (-4.0 * lower - 4));
+        boolean any = false;
+        for (int i = 0; i < PASSES; i++) {
+            any |= (radii[i] = ((i < m ? lower : upper) - 1) / 2) > 0;
+        }
+        return any;
+    }
+
+    /**
+     * Blurs alpha mask in place. Pixels outside of the mask are considered transparent.
+     * @param alpha  mask pixels
+     * @param width  mask width
+     * @param height mask height
+     * @param stride distance between rows, at least width
+     * @param sigma  Gaussian standard deviation
+     */
+    static void blur(byte[] alpha, int width, int height, int stride, float sigma) {
+        blur(alpha, width, height, stride, sigma, Build.VERSION.SDK_INT >= 21 && width * height >= PARALLEL_THRESHOLD);
+    }
+    /**
+     * Blurs alpha mask in place, splitting work across threads if parallel. Results are equal either way.
+     * Parallel blur requires API 21, callers check it.
+     */
+    @SuppressLint("NewApi") static void blur(byte[] alpha, int width, int height, int stride, float sigma, boolean parallel) {
+        int[] radii = new int[PASSES];
+        if (width <= 0 || height <= 0 || !boxRadii(sigma, radii)) return;
+
+        if (parallel) {
+            Parallel.blur(alpha, width, height, stride, radii);
+        } else {
+            horizontal(alpha, width, stride, radii, 0, height);
+            for (int x = 0; x < width; x += GRAIN) vertical(alpha, width, height, stride, radii, x, min(x + GRAIN, width));
+        }
+    }
+
+    /** Distance which blur spreads pixels to. Each pass must see what previous ones spread out of the mask. */
+    private static int spill(int[] radii) {
+        int spill = 0;
+        for (int radius : radii) spill += radius;
+        return spill;
+    }
+
+    /** Applies all horizontal passes to rows [from, till) in place. */
+    static void horizontal(byte[] alpha, int width, int stride, int[] radii, int from, int till) {
+        int spill = spill(radii), length = width + 2 * spill;
+        int[] a = new int[length], b = new int[length];
+        for (int y = from; y < till; y++) {
+            int offset = y * stride;
+            Arrays.fill(a, 0);
+            for (int x = 0; x < width; x++) a[spill + x] = alpha[offset + x] & 0xFF;
+            for (int pass = 0; pass < PASSES; pass++) {
+                boolean even = (pass & 1) == 0;
+                boxLine(even ? a : b, even ? b : a, length, radii[pass]);
+            }
+            int[] result = (PASSES & 1) == 0 ? a : b;
+            for (int x = 0; x < width; x++) alpha[offset + x] = (byte) result[spill + x];
+        }
+    }
+    private static void boxLine(int[] src, int[] dst, int length, int radius) {
+        int size = radius + radius + 1;
+        int mul = (1 << 16) / size;
+        int sum = 0;
+        for (int i = 0, end = min(radius, length - 1); i <= end; i++) sum += src[i];
+        for (int i = 0; i < length; i++) {
+            dst[i] = (sum * mul + (1 << 15)) >>> 16;
+            int add = i + radius + 1, sub = i - radius;
+            if (add < length) sum += src[add];
+            if (sub >= 0) sum -= src[sub];
+        }
+    }
+
+    /** Applies all vertical passes to columns [from, till) in place, going row by row to stay cache-friendly. */
+    static void vertical(byte[] alpha, int width, int height, int stride, int[] radii, int from, int till) {
+        int columns = till - from, spill = spill(radii), length = height + 2 * spill;
+        int[] a = new int[length * columns], b = new int[length * columns];
+        for (int y = 0; y < height; y++)
+            for (int x = 0, offset = y * stride + from, o = (spill + y) * columns; x < columns; x++)
+                a[o + x] = alpha[offset + x] & 0xFF;
+        int[] sums = new int[columns];
+        for (int pass = 0; pass < PASSES; pass++) {
+            boolean even = (pass & 1) == 0;
+            boxColumns(even ? a : b, even ? b : a, length, columns, radii[pass], sums);
+        }
+        int[] result = (PASSES & 1) == 0 ? a : b;
+        for (int y = 0; y < height; y++)
+            for (int x = 0, offset = y * stride + from, o = (spill + y) * columns; x < columns; x++)
+                alpha[offset + x] = (byte) result[o + x];
+    }
+    private static void boxColumns(int[] src, int[] dst, int length, int columns, int radius, int[] sums) {
+        int size = radius + radius + 1;
+        int mul = (1 << 16) / size;
+        Arrays.fill(sums, 0);
+        for (int y = 0, end = min(radius, length - 1); y <= end; y++)
+            for (int x = 0, o = y * columns; x < columns; x++)
+                sums[x] += src[o + x];
+        for (int y = 0; y < length; y++) {
+            for (int x = 0, o = y * columns; x < columns; x++)
+                dst[o + x] = (sums[x] * mul + (1 << 15)) >>> 16;
+            int add = y + radius + 1, sub = y - radius;
+            if (add < length)
+                for (int x = 0, o = add * columns; x < columns; x++)
+                    sums[x] += src[o + x];
+            if (sub >= 0)
+                for (int x = 0, o = sub * columns; x < columns; x++)
+                    sums[x] -= src[o + x];
+        }
+    }
+
+    @RequiresApi(21) private static final class Parallel extends RecursiveAction {
+        private static ForkJoinPool pool;
+        private static synchronized ForkJoinPool pool() {
+            return pool == null ? pool = new ForkJoinPool() : pool;
+        }
+
+        static void blur(byte[] alpha, int width, int height, int stride, int[] radii) {
+            ForkJoinPool pool = pool();
+            pool.invoke(new Parallel(alpha, width, height, stride, radii, true, 0, height));
+            pool.invoke(new Parallel(alpha, width, height, stride, radii, false, 0, width));
+        }
+
+        private final byte[] alpha;
+        private final int width, height, stride;
+        private final int[] radii;
+        private final boolean rows; // horizontal passes over rows, or vertical ones over columns
+        private final int from, till;
+        private Parallel(byte[] alpha, int width, int height, int stride, int[] radii, boolean rows, int from, int till) {
+            this.alpha = alpha;
+            this.width = width;
+            this.height = height;
+            this.stride = stride;
+            this.radii = radii;
+            this.rows = rows;
+            this.from = from;
+            this.till = till;
+        }
+
+        @Override protected void compute() {
+            if (till - from <= GRAIN) {
+                if (rows) horizontal(alpha, width, stride, radii, from, till);
+                else vertical(alpha, width, height, stride, radii, from, till);
+            } else {
+                int mid = (from + till) >>> 1;
+                invokeAll(
+                    new Parallel(alpha, width, height, stride, radii, rows, from, mid),
+                    new Parallel(alpha, width, height, stride, radii, rows, mid, till)
+                );
+            }
+        }
+    }
+}
@@ -154,10 +154,11 @@ public enum CornerSet {
         chunk[1] = 2; //(byte) xdl;
         chunk[2] = 2; //(byte) ydl;
         chunk[3] = (byte) colorCount;
-        putLe(chunk, 12, (cornersAndEdges & ANY_LEFT) != 0 ? paddings.left : 0);
-        putLe(chunk, 16, (cornersAndEdges & ANY_RIGHT) != 0 ? paddings.right : 0);
-        putLe(chunk, 20, (cornersAndEdges & ANY_TOP) != 0 ? paddings.top : 0);
-        putLe(chunk, 24, (cornersAndEdges & ANY_BOTTOM) != 0 ? paddings.bottom : 0);
+        Rect padding = padding(paddings, new Rect());
+        putLe(chunk, 12, padding.left);
+        putLe(chunk, 16, padding.right);
+        putLe(chunk, 20, padding.top);
+        putLe(chunk, 24, padding.bottom);
         // for (int j = 0; j < xdl; j++) putLe(chunk, i+=4, xDivs[j]); unrolled:
         putLe(chunk, 32, xDiv);
         putLe(chunk, 36, xDiv + 1);
@@ -169,6 +170,17 @@ public enum CornerSet {
         return chunk;
     }
 
+    /** Calculates padding of a patch, i.e. paddings of present sides. */
+    @NonNull Rect padding(@NonNull Rect paddings, @NonNull Rect into) {
+        into.set(
+            (cornersAndEdges & ANY_LEFT) != 0 ? paddings.left : 0,
+            (cornersAndEdges & ANY_TOP) != 0 ? paddings.top : 0,
+            (cornersAndEdges & ANY_RIGHT) != 0 ? paddings.right : 0,
+            (cornersAndEdges & ANY_BOTTOM) != 0 ? paddings.bottom : 0
+        );
+        return into;
+    }
+
     @NonNull Drawable inset(@NonNull Drawable d, @NonNull Rect paddings) {
         boolean nbrl = this != BETWEEN_RIGHT_AND_LEFT;
         boolean nbbt = this != BETWEEN_BOTTOM_AND_TOP;
@@ -0,0 +1,201 @@
+package net.aquadc.fiftyshades;
+
+import android.graphics.Bitmap;
+import android.graphics.NinePatch;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Persistent storage of patches rendered by {@link PatchCache}, so cold starts could skip rendering.
+ * Each entry is a file holding raw pixels and 9-patch chunk, read back through a memory mapping.
+ * Entries live in a subdirectory owned by the library, and the ones written by its other versions are dropped.
+ * Disk is accessed by threads which render patches, see {@link RectWithShadow#createDrawableAsync}.
+ */
+@RequiresApi(14) public final class DiskPatchCache {
+
+    /** Bump when file format changes. Rendering output is versioned with the library itself. */
+    private static final int VERSION = 1;
+    private static final int MAGIC = 0x35305348; // 50SH
+    private static final String SUFFIX = ".patch";
+    /** Subdirectory owned by the library, only version directories inside of it are ever deleted. */
+    private static final String OWN_DIR = "fiftyshades";
+    private static final String VERSION_DIR = "v\\d+-.+";
+
+    private final File dir;
+    private final long maxBytes;
+    private boolean prepared;
+
+    /**
+     * Constructs new disk cache.
+     * @param dir      where to store entries, e.g. {@link android.content.Context#getCacheDir()}; they go to its {@code fiftyshades/} subdirectory
+     * @param maxBytes maximum total size of entries
+     */
+    public DiskPatchCache(@NonNull File dir, long maxBytes) {
+        if (maxBytes < 0) throw new IllegalArgumentException("maxBytes must be >= 0, got " + maxBytes);
+        this.dir = new File(new File(dir, OWN_DIR), "v" + VERSION + '-' + BuildConfig.LIBRARY_VERSION.replaceAll("[^A-Za-z0-9._-]", "_"));
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Reads a patch, if present.
+     */
+    @Nullable NinePatch read(PatchCache.Key key) {
+        File file = fileOf(key);
+        if (!file.exists()) return null;
+        try {
+            FileInputStream in = new FileInputStream(file);
+            try {
+                FileChannel channel = in.getChannel();
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                buffer.order(ByteOrder.nativeOrder()); // pixels are native anyway
+                if (buffer.remaining() < 8 + PatchCache.Key.BYTES + 16 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION ||
+                    !key.matches(buffer)) throw new IOException("corrupt");
+                int width = buffer.getInt(), height = buffer.getInt();
+                Bitmap.Config config = config(buffer.getInt());
+                byte[] chunk = new byte[buffer.getInt()];
+                buffer.get(chunk);
+
+                Bitmap bitmap = Bitmap.createBitmap(width, height, config);
+                if (buffer.remaining() != bitmap.getRowBytes() * height) throw new IOException("corrupt");
+                bitmap.copyPixelsFromBuffer(buffer);
+                //noinspection ResultOfMethodCallIgnored
+                file.setLastModified(System.currentTimeMillis()); // for LRU trimming
+                return new NinePatch(bitmap, chunk, null);
+            } finally {
+                in.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Writes a patch, evicting least recently used entries if necessary. Failures are ignored.
+     */
+    void write(PatchCache.Key key, NinePatch patch, byte[] chunk) {
+        Bitmap bitmap = patch.getBitmap();
+        int config = code(bitmap.getConfig());
+        if (config == 0) return;
+        int pixels = bitmap.getRowBytes() * bitmap.getHeight();
+        int size = 8 + PatchCache.Key.BYTES + 16 + chunk.length + pixels;
+        if (size > maxBytes) return;
+
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.nativeOrder());
+        buffer.putInt(MAGIC).putInt(VERSION);
+        key.writeTo(buffer);
+        buffer.putInt(bitmap.getWidth()).putInt(bitmap.getHeight()).putInt(config).putInt(chunk.length).put(chunk);
+        bitmap.copyPixelsToBuffer(buffer);
+        buffer.flip();
+
+        File tmp = null;
+        try {
+            prepare();
+            tmp = File.createTempFile("tmp", null, dir);
+            FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                FileChannel channel = out.getChannel();
+                while (buffer.hasRemaining()) channel.write(buffer);
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(fileOf(key))) throw new IOException("rename");
+            tmp = null;
+            trimToSize(maxBytes);
+        } catch (IOException e) {
+            // the cache is optional, let's just render next time
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            if (tmp != null) tmp.delete();
+        }
+    }
+
+    /**
+     * Deletes least recently used entries until total size fits into the given number of bytes.
+     */
+    public synchronized void trimToSize(long maxBytes) {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        long total = 0;
+        for (File file : files) total += file.length();
+        if (total <= maxBytes) return;
+        final long[] modified = new long[files.length];
+        for (int i = 0; i < files.length; i++) modified[i] = files[i].lastModified();
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override public int compare(Integer a, Integer b) {
+                long ma = modified[a], mb = modified[b];
+                return ma < mb ? -1 : ma == mb ? 0 : 1;
+            }
+        });
+        for (int i = 0; i < order.length && total > maxBytes; i++) {
+            File file = files[order[i]];
+            long length = file.length();
+            if (file.delete()) total -= length;
+        }
+    }
+
+    /**
+     * Deletes all entries.
+     */
+    public void evictAll() {
+        trimToSize(0);
+    }
+
+    /** Creates the directory and drops entries of other versions, once. */
+    private synchronized void prepare() throws IOException {
+        if (prepared) return;
+        File parent = dir.getParentFile();
+        File[] versions = parent == null ? null : parent.listFiles();
+        if (versions != null) for (File version : versions)
+            if (!version.equals(dir) && version.isDirectory() && version.getName().matches(VERSION_DIR)) delete(version);
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("mkdirs " + dir);
+        prepared = true;
+    }
+    private static void delete(File dir) {
+        File[] files = dir.listFiles();
+        //noinspection ResultOfMethodCallIgnored
+        if (files != null) for (File file : files) file.delete();
+        //noinspection ResultOfMethodCallIgnored
+        dir.delete();
+    }
+
+    private File fileOf(PatchCache.Key key) {
+        return new File(dir, Long.toHexString(key.fingerprint()) + SUFFIX);
+    }
+
+    private static int code(Bitmap.Config config) {
+        switch (config) {
+            case ALPHA_8: return 1;
+            case RGB_565: return 2;
+            case ARGB_8888: return 3;
+            default: return 0;
+        }
+    }
+    private static Bitmap.Config config(int code) throws IOException {
+        switch (code) {
+            case 1: return Bitmap.Config.ALPHA_8;
+            case 2: return Bitmap.Config.RGB_565;
+            case 3: return Bitmap.Config.ARGB_8888;
+            default: throw new IOException("corrupt");
+        }
+    }
+
+    @Override public String toString() {
+        return "DiskPatchCache(" + dir + ", " + maxBytes + " bytes)";
+    }
+}
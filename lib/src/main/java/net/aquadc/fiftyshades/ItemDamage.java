@@ -0,0 +1,93 @@
+package net.aquadc.fiftyshades;
+
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Looper;
+import android.view.View;
+import androidx.annotation.RequiresApi;
+
+import static net.aquadc.fiftyshades.Numbers.ceil;
+
+/**
+ * Invalidates areas touched by animated item decor properties.
+ * Area invalidated since the last draw of a parent is remembered, and changes inside of it are skipped,
+ * so a frame of several animated properties invalidates once, without waiting for the next frame.
+ * Main thread only, like animators.
+ */
+@RequiresApi(14) final class ItemDamage {
+    private ItemDamage() {}
+
+    private static final Rect before = new Rect(), dirty = new Rect(), paddings = new Rect();
+    private static final RectF extent = new RectF();
+    private static boolean beforeKnown;
+
+    /** Remembers the area occupied by decor of the given item which is affected by the given property. */
+    static void beforeChange(View item, int at) {
+        before.setEmpty();
+        beforeKnown = extentOf(item, at, before);
+    }
+
+    /** Invalidates the area affected by a property change, unless it's already invalid. */
+    static void afterChange(View item, int at) {
+        View parent = (View) item.getParent();
+        if (parent == null) return;
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            parent.postInvalidate();
+            return;
+        }
+
+        Rect invalid = (Rect) parent.getTag(R.id.fiftyShades_decorDamage);
+        if (invalid == null) parent.setTag(R.id.fiftyShades_decorDamage, invalid = new Rect());
+        Rect dirty = ItemDamage.dirty;
+        dirty.setEmpty();
+        if (beforeKnown && extentOf(item, at, dirty)) {
+            dirty.union(before);
+            if (invalid.contains(dirty)) return; // will be redrawn anyway
+            invalid.union(dirty);
+            parent.invalidate(dirty); // since API 28, the whole view is invalidated anyway
+        } else if (invalid.left != Integer.MIN_VALUE) {
+            invalid.set(Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+            parent.invalidate();
+        }
+    }
+
+    /** Forgets the invalidated area of a parent which is being drawn. */
+    static void drawn(View parent) {
+        Rect invalid = (Rect) parent.getTag(R.id.fiftyShades_decorDamage);
+        if (invalid != null) invalid.setEmpty();
+    }
+
+    /**
+     * Unions the area which depends on the given property of the given item, in parent coordinates, into the given rect.
+     * Fill and inner shadow are inside of item bounds, stroke needs own width, and outer shadow needs own paddings.
+     * @return false if extent is unknown because the item still has no own properties or they were not resolved yet
+     */
+    private static boolean extentOf(View item, int at, Rect into) {
+        float l = 1f, t = 1f, r = 1f, b = 1f; // antialiasing
+        if (at == 1 || at == 2 || at == 3) { // corner radius and stroke move stroke, it is centered on the edge
+            RectSpec rect = (RectSpec) item.getTag(R.id.fiftyShades_decorRectSpec);
+            if (rect == null || Float.isNaN(rect.strokeWidth)) return false;
+            l = t = r = b = l + rect.strokeWidth / 2f;
+        }
+        if (at == 1 || (at >= 4 && at < 9)) { // corner radius and outer shadow move outer shadow
+            ShadowSpec shadow = (ShadowSpec) item.getTag(R.id.fiftyShades_decorShadowSpec);
+            if (shadow == null || Float.isNaN(shadow.dx) || Float.isNaN(shadow.dy) ||
+                Float.isNaN(shadow.radius) || Float.isNaN(shadow.spread)) return false;
+            Rect pad = shadow.inferPaddings(paddings);
+            float spread = Math.max(0f, shadow.spread);
+            l = Math.max(l, pad.left + spread + 1f);
+            t = Math.max(t, pad.top + spread + 1f);
+            r = Math.max(r, pad.right + spread + 1f);
+            b = Math.max(b, pad.bottom + spread + 1f);
+        }
+
+        RectF ext = extent;
+        ext.set(-l, -t, item.getWidth() + r, item.getHeight() + b);
+        Matrix matrix = item.getMatrix();
+        if (!matrix.isIdentity()) matrix.mapRect(ext);
+        ext.offset(item.getLeft(), item.getTop());
+        into.union((int) Math.floor(ext.left), (int) Math.floor(ext.top), ceil(ext.right), ceil(ext.bottom));
+        return true;
+    }
+}
@@ -0,0 +1,134 @@
+package net.aquadc.fiftyshades;
+
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.Px;
+
+import static java.lang.Math.max;
+import static net.aquadc.fiftyshades.Numbers.multiplyAlpha;
+
+/**
+ * Several outer shadows of a rectangle with rounded corners, like comma-separated CSS box-shadows:
+ * the first one is on top. E.g. Material elevation is an ambient shadow plus a key one.
+ * All layers are merged into a single triangle mesh drawn with one {@link Canvas#drawVertices} call,
+ * which is rebuilt only when a layer, bounds, or alpha change.
+ * The mesh approximates Gaussian falloff with a few rings of per-vertex alpha, so it is slightly less smooth than
+ * {@link RectShadow}.
+ * <p>Limitation: hardware-accelerated canvases before API 29 don't support drawVertices;
+ * there layers are drawn one by one as {@link RectShadow}s. Thus the cost is linear in layers,
+ * and the same drawable looks slightly different there. Same happens with more than 232 layers,
+ * which don't fit into 16-bit vertex indices.
+ */
+public final class MultiShadow extends Drawable implements Drawable.Callback {
+
+    private final RectShadow[] layers;
+    private final ShadowMesh mesh = new ShadowMesh();
+    private boolean meshValid;
+    private int alpha = 0xFF;
+    private ColorFilter colorFilter;
+
+    /**
+     * Constructs new MultiShadow.
+     * @param cornerRadius corner radius of all layers
+     * @param shadows      layers, from top to bottom
+     */
+    public MultiShadow(@Px int cornerRadius, @NonNull ShadowSpec... shadows) {
+        layers = new RectShadow[shadows.length];
+        for (int i = 0; i < shadows.length; i++) {
+            RectShadow layer = new RectShadow(cornerRadius, shadows[i]);
+            layer.setCallback(this);
+            layers[i] = layer;
+        }
+    }
+
+    /** Returns the number of layers. */
+    public int layerCount() { return layers.length; }
+
+    /**
+     * Returns a layer. Changes of layer properties, including animated {@link Shadow} properties, invalidate this drawable:
+     * {@code ObjectAnimator.ofFloat(multi.layer(1), Shadow.SHADOW_DY, dp(8))}.
+     */
+    @NonNull public RectShadow layer(int index) { return layers[index]; }
+
+    /** Sets corner radius of all layers. */
+    public MultiShadow cornerRadius(@Px int cornerRadius) {
+        for (RectShadow layer : layers) layer.cornerRadius(cornerRadius);
+        return this;
+    }
+
+    // layers
+
+    @Override public void invalidateDrawable(@NonNull Drawable who) {
+        meshValid = false;
+        invalidateSelf();
+    }
+    @Override public void scheduleDrawable(@NonNull Drawable who, @NonNull Runnable what, long when) {
+        scheduleSelf(what, when);
+    }
+    @Override public void unscheduleDrawable(@NonNull Drawable who, @NonNull Runnable what) {
+        unscheduleSelf(what);
+    }
+
+    @Override protected void onBoundsChange(Rect bounds) {
+        for (RectShadow layer : layers) layer.setBounds(bounds);
+        meshValid = false;
+    }
+
+    // drawing
+
+    @Override public void draw(@NonNull Canvas canvas) {
+        boolean metrics = ShadowMetrics.enabled;
+        long start = metrics ? ShadowMetrics.begin(ShadowMetrics.MULTI_SHADOW) : 0L;
+        RectShadow[] layers = this.layers;
+        if ((canvas.isHardwareAccelerated() && Build.VERSION.SDK_INT < 29) || layers.length > ShadowMesh.MAX_SHADOWS) {
+            for (int i = layers.length - 1; i >= 0; i--) layers[i].draw(canvas);
+        } else {
+            if (!meshValid) buildMesh();
+            mesh.replay(canvas);
+        }
+        if (metrics) ShadowMetrics.end(ShadowMetrics.MULTI_SHADOW, start, layers.length);
+    }
+    private void buildMesh() {
+        ShadowMesh mesh = this.mesh;
+        mesh.clear();
+        Rect bounds = getBounds();
+        float left = bounds.left, top = bounds.top;
+        // guard against squeezing, like RectShadow does
+        float right = left + max(0, bounds.width()), bottom = top + max(0, bounds.height());
+        float alpha = this.alpha / 255f;
+        for (int i = layers.length - 1; i >= 0; i--) { // bottom to top
+            Shadow.ShadowState state = layers[i].state;
+            if (state.shadow.isVisible())
+                mesh.add(left, top, right, bottom, state.cornerRadius, state.shadow, multiplyAlpha(state.shadow.color, alpha));
+        }
+        meshValid = true;
+    }
+
+    @Override public int getAlpha() { return alpha; }
+    @Override public void setAlpha(int alpha) {
+        if (this.alpha != alpha) {
+            this.alpha = alpha;
+            for (RectShadow layer : layers) layer.setAlpha(alpha);
+            meshValid = false;
+            invalidateSelf();
+        }
+    }
+
+    @Nullable @Override public ColorFilter getColorFilter() { return colorFilter; }
+    @Override public void setColorFilter(@Nullable ColorFilter colorFilter) {
+        this.colorFilter = colorFilter;
+        mesh.colorFilter(colorFilter);
+        for (RectShadow layer : layers) layer.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+}
@@ -0,0 +1,340 @@
+package net.aquadc.fiftyshades;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.NinePatch;
+import android.graphics.Rect;
+import android.os.Build;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * LRU cache of patches created by {@link RectWithShadow}, bounded by total bitmap size.
+ * Patches are shared between all callers requesting the same appearance, thus they must not be mutated.
+ * Register it via {@link android.content.Context#registerComponentCallbacks} to let it shrink on memory pressure.
+ */
+@RequiresApi(14) public final class PatchCache implements ComponentCallbacks2 {
+
+    private static PatchCache shared;
+
+    /**
+     * Returns process-wide cache limited to 1/32 of heap.
+     */
+    @NonNull public static synchronized PatchCache shared() {
+        PatchCache cache = shared;
+        return cache == null ? shared = new PatchCache(Runtime.getRuntime().maxMemory() / 32) : cache;
+    }
+
+    private final LinkedHashMap<Key, NinePatch> patches = new LinkedHashMap<>(16, .75f, true);
+    private final HashMap<Key, ArrayList<Ready>> pending = new HashMap<>();
+    private final long maxBytes;
+    private long bytes;
+    private long hits, misses, evictions;
+
+    /**
+     * Constructs new cache.
+     * @param maxBytes maximum total allocation size of cached bitmaps
+     */
+    public PatchCache(long maxBytes) {
+        if (maxBytes < 0) throw new IllegalArgumentException("maxBytes must be >= 0, got " + maxBytes);
+        this.maxBytes = maxBytes;
+    }
+
+    private volatile DiskPatchCache disk;
+    /**
+     * Sets persistent storage to look for patches before rendering them, and to put rendered patches into.
+     */
+    public PatchCache disk(@Nullable DiskPatchCache disk) {
+        this.disk = disk;
+        return this;
+    }
+    @Nullable public DiskPatchCache disk() { return disk; }
+
+    @NonNull NinePatch get(
+        @Nullable Resources res, int bgColor, RectSpec rect, ShadowSpec shadow, Rect paddings, CornerSet corners
+    ) {
+        int density = res == null ? Bitmap.DENSITY_NONE : res.getDisplayMetrics().densityDpi;
+        Key key = new Key(false, density, bgColor, rect, shadow, paddings, corners);
+        NinePatch patch = get(key);
+        // render without holding the lock, concurrent misses of the same key are rare and harmless
+        return patch != null ? patch : put(key, render(key, bgColor, rect, shadow, paddings, corners));
+    }
+
+    /**
+     * Returns a colourless shadow mask, see {@link RectWithShadow#createShadowPatch(int, ShadowSpec, Rect)}.
+     * Shadow colour is ignored, thus masks are shared by shadows of any colour.
+     */
+    @NonNull NinePatch getMask(int cornerRadius, ShadowSpec shadow, Rect paddings) {
+        Key key = new Key(true, Bitmap.DENSITY_NONE, Color.TRANSPARENT,
+            new RectSpec(Color.BLACK, cornerRadius), new ShadowSpec(shadow.dx, shadow.dy, shadow.radius, Color.BLACK),
+            paddings, CornerSet.ALL);
+        NinePatch patch = get(key);
+        return patch != null ? patch : put(key, render(key, Color.TRANSPARENT, null, shadow, paddings, CornerSet.ALL));
+    }
+
+    /**
+     * Receives a patch rendered in background, on the rendering thread.
+     */
+    interface Ready {
+        /** @param patch rendered patch, or null if rendering has failed */
+        void ready(@Nullable NinePatch patch);
+    }
+
+    /**
+     * Returns the cached patch, or null, rendering it on the executor and passing it to the callback.
+     * Concurrent requests of the same appearance are rendered once.
+     * If rendering fails, e.g. runs out of memory, all waiting callbacks receive null,
+     * the executor thread survives, and the next request of the same appearance tries again.
+     */
+    @Nullable NinePatch getAsync(
+        @Nullable Resources res, @NonNull Executor executor, @NonNull final PatchSpec spec, @Nullable Ready callback
+    ) {
+        int density = res == null ? Bitmap.DENSITY_NONE : res.getDisplayMetrics().densityDpi;
+        final Key key = new Key(false, density, spec.bgColor, spec.rect, spec.shadow, spec.paddings, spec.corners);
+        boolean render;
+        synchronized (this) {
+            NinePatch patch = patches.get(key);
+            if (patch != null) {
+                hits++;
+                return patch;
+            }
+            ArrayList<Ready> waiting = pending.get(key);
+            if (render = waiting == null) {
+                misses++;
+                pending.put(key, waiting = new ArrayList<>(1));
+            }
+            if (callback != null) waiting.add(callback);
+        }
+        if (render) {
+            try {
+                executor.execute(new Runnable() {
+                    @Override public void run() {
+                        NinePatch patch;
+                        try {
+                            patch = put(key, render(key, spec.bgColor, spec.rect, spec.shadow, spec.paddings, spec.corners));
+                        } catch (RuntimeException | OutOfMemoryError e) {
+                            patch = null; // waiters keep drawing without shadow
+                        }
+                        ArrayList<Ready> waiting = removePending(key);
+                        for (int i = 0, size = waiting.size(); i < size; i++) waiting.get(i).ready(patch);
+                    }
+                });
+            } catch (RuntimeException e) { // rejected
+                removePending(key);
+                throw e;
+            }
+        }
+        return null;
+    }
+    private synchronized ArrayList<Ready> removePending(Key key) {
+        return pending.remove(key);
+    }
+
+    /** Reads the patch from disk, or renders it. Rect is ignored for masks. */
+    private NinePatch render(Key key, int bgColor, RectSpec rect, ShadowSpec shadow, Rect paddings, CornerSet corners) {
+        DiskPatchCache disk = this.disk;
+        NinePatch patch = disk == null ? null : disk.read(key);
+        if (patch == null) {
+            patch = key.mask
+                ? RectWithShadow.createShadowPatch(key.cornerRadius, shadow, paddings)
+                : RectWithShadow.createPatch(bgColor, rect, shadow, paddings, corners);
+            if (disk != null) disk.write(key, patch, key.mask
+                ? RectWithShadow.shadowChunk(key.cornerRadius, shadow, paddings)
+                : RectWithShadow.chunk(bgColor, rect, shadow, paddings, corners));
+        }
+        if (key.density != Bitmap.DENSITY_NONE) patch.getBitmap().setDensity(key.density);
+        return patch;
+    }
+
+    private synchronized NinePatch get(Key key) {
+        NinePatch patch = patches.get(key);
+        if (patch != null) hits++;
+        else misses++;
+        return patch;
+    }
+    private NinePatch put(Key key, NinePatch patch) {
+        long size = sizeOf(patch);
+        synchronized (this) {
+            NinePatch existing = patches.get(key);
+            if (existing != null) return existing;
+            if (size <= maxBytes) {
+                patches.put(key, patch);
+                bytes += size;
+                trimToSize(maxBytes);
+            }
+        }
+        return patch;
+    }
+
+    private static long sizeOf(NinePatch patch) {
+        Bitmap bitmap = patch.getBitmap();
+        return Build.VERSION.SDK_INT >= 19 ? bitmap.getAllocationByteCount() : bitmap.getByteCount();
+    }
+
+    // stats
+
+    /** Returns the number of requests served from cache. */
+    public synchronized long hitCount() { return hits; }
+    /** Returns the number of requests which required rendering a new patch. */
+    public synchronized long missCount() { return misses; }
+    /** Returns the number of patches evicted due to size limit or memory pressure. */
+    public synchronized long evictionCount() { return evictions; }
+    /** Returns total allocation size of cached bitmaps. */
+    public synchronized long byteCount() { return bytes; }
+    /** Returns the limit for {@link #byteCount()}. */
+    public long maxByteCount() { return maxBytes; }
+    /** Returns the number of cached patches. */
+    public synchronized int size() { return patches.size(); }
+
+    // eviction
+
+    /**
+     * Evicts least recently used patches until total size fits into the given number of bytes.
+     */
+    public synchronized void trimToSize(long maxBytes) {
+        if (maxBytes < 0) throw new IllegalArgumentException("maxBytes must be >= 0, got " + maxBytes);
+        Iterator<Map.Entry<Key, NinePatch>> itr = patches.entrySet().iterator();
+        while (bytes > maxBytes && itr.hasNext()) {
+            bytes -= sizeOf(itr.next().getValue());
+            itr.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Evicts all patches.
+     */
+    public void evictAll() {
+        trimToSize(0);
+    }
+
+    @Override public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_MODERATE) evictAll(); // we're going to be killed soon, free as much as we can
+        else if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL) trimToSize(maxBytes / 4);
+        else if (level >= TRIM_MEMORY_UI_HIDDEN || level == TRIM_MEMORY_RUNNING_LOW) trimToSize(maxBytes / 2);
+    }
+    @Override public void onLowMemory() {
+        evictAll();
+    }
+    @Override public void onConfigurationChanged(@NonNull Configuration newConfig) {
+    }
+
+    @Override public String toString() {
+        long hits, misses, bytes;
+        synchronized (this) {
+            hits = this.hits;
+            misses = this.misses;
+            bytes = this.bytes;
+        }
+        return "PatchCache(" + bytes + '/' + maxBytes + " bytes, " + hits + " hits, " + misses + " misses)";
+    }
+
+    /**
+     * An immutable snapshot of patch appearance.
+     */
+    static final class Key {
+        /** Size of {@link #writeTo(ByteBuffer)} output. */
+        static final int BYTES = 16 * 4;
+
+        private final boolean mask;
+        private final int density, bgColor;
+        private final int fillColor, cornerRadius, strokeColor;
+        private final float strokeWidth;
+        private final float dx, dy, radius;
+        private final int shadowColor;
+        private final int padLeft, padTop, padRight, padBottom;
+        private final CornerSet corners;
+        Key(boolean mask, int density, int bgColor, RectSpec rect, ShadowSpec shadow, Rect paddings, CornerSet corners) {
+            this.mask = mask;
+            this.density = density;
+            this.bgColor = bgColor;
+            this.fillColor = rect.fillColor;
+            this.cornerRadius = rect.cornerRadius;
+            this.strokeColor = rect.strokeColor;
+            this.strokeWidth = rect.strokeWidth;
+            this.dx = shadow.dx;
+            this.dy = shadow.dy;
+            this.radius = shadow.radius;
+            this.shadowColor = shadow.color;
+            this.padLeft = paddings.left;
+            this.padTop = paddings.top;
+            this.padRight = paddings.right;
+            this.padBottom = paddings.bottom;
+            this.corners = corners;
+        }
+
+        void writeTo(ByteBuffer buffer) {
+            buffer.putInt(mask ? 1 : 0).putInt(density).putInt(bgColor)
+                .putInt(fillColor).putInt(cornerRadius).putInt(strokeColor).putFloat(strokeWidth)
+                .putFloat(dx).putFloat(dy).putFloat(radius).putInt(shadowColor)
+                .putInt(padLeft).putInt(padTop).putInt(padRight).putInt(padBottom)
+                .putInt(corners.ordinal());
+        }
+        /** Checks whether the buffer contains this key, consuming it. */
+        boolean matches(ByteBuffer buffer) {
+            ByteBuffer expected = ByteBuffer.allocate(BYTES).order(buffer.order());
+            writeTo(expected);
+            expected.flip();
+            ByteBuffer actual = buffer.slice();
+            actual.limit(BYTES);
+            buffer.position(buffer.position() + BYTES);
+            return expected.equals(actual);
+        }
+        /** 64-bit FNV-1a hash of {@link #writeTo(ByteBuffer)} output, stable between launches. */
+        long fingerprint() {
+            ByteBuffer bytes = ByteBuffer.allocate(BYTES);
+            writeTo(bytes);
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < BYTES; i++) hash = (hash ^ (bytes.get(i) & 0xFF)) * 0x100000001b3L;
+            return hash;
+        }
+
+        @Override public boolean equals(Object o) {
+            Key that;
+            return this == o || (o instanceof Key &&
+                mask == (that = (Key) o).mask &&
+                density == that.density &&
+                bgColor == that.bgColor &&
+                fillColor == that.fillColor &&
+                cornerRadius == that.cornerRadius &&
+                strokeColor == that.strokeColor &&
+                Float.compare(strokeWidth, that.strokeWidth) == 0 &&
+                Float.compare(dx, that.dx) == 0 &&
+                Float.compare(dy, that.dy) == 0 &&
+                Float.compare(radius, that.radius) == 0 &&
+                shadowColor == that.shadowColor &&
+                padLeft == that.padLeft && padTop == that.padTop &&
+                padRight == that.padRight && padBottom == that.padBottom &&
+                corners == that.corners
+            );
+        }
+        @Override public int hashCode() {
+            int h = 31 * (31 * (mask ? 1 : 0) + density) + bgColor;
+            h = 31 * h + fillColor;
+            h = 31 * h + cornerRadius;
+            h = 31 * h + strokeColor;
+            h = 31 * h + Float.floatToIntBits(strokeWidth);
+            h = 31 * h + Float.floatToIntBits(dx);
+            h = 31 * h + Float.floatToIntBits(dy);
+            h = 31 * h + Float.floatToIntBits(radius);
+            h = 31 * h + shadowColor;
+            h = 31 * h + padLeft;
+            h = 31 * h + padTop;
+            h = 31 * h + padRight;
+            h = 31 * h + padBottom;
+            return 31 * h + corners.ordinal();
+        }
+    }
+}
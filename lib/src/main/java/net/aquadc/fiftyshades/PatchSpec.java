@@ -0,0 +1,82 @@
+package net.aquadc.fiftyshades;
+
+import android.graphics.Color;
+import android.graphics.Rect;
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import static net.aquadc.fiftyshades.Numbers.appendColor;
+
+/**
+ * Appearance of a patch created by {@link RectWithShadow}, an immutable snapshot of its parameters.
+ */
+public final class PatchSpec {
+    @ColorInt final int bgColor;
+    @NonNull final RectSpec rect;
+    @NonNull final ShadowSpec shadow;
+    @NonNull final Rect paddings;
+    @NonNull final CornerSet corners;
+
+    /**
+     * Constructs new PatchSpec.
+     * @param bgColor       colour under the sheet and shadow, effectively colour of paddings
+     * @param rect          shape appearance
+     * @param shadow        shadow spec
+     * @param paddings      spaces between edges of shape and edges of 9-patch. Will be inferred if null
+     * @param corners       which corners should be drawn
+     */
+    public PatchSpec(
+        @ColorInt int bgColor,
+        @NonNull RectSpec rect,
+        @NonNull ShadowSpec shadow,
+        @Nullable Rect paddings,
+        @NonNull CornerSet corners
+    ) {
+        this.bgColor = bgColor;
+        this.rect = new RectSpec(rect.fillColor, rect.cornerRadius, rect.strokeColor, rect.strokeWidth);
+        this.shadow = new ShadowSpec(shadow);
+        this.paddings = paddings == null ? shadow.inferPaddings() : new Rect(paddings);
+        this.corners = corners;
+    }
+
+    /**
+     * Constructs new PatchSpec for a round rect with all corners over transparent background.
+     */
+    public PatchSpec(@NonNull RectSpec rect, @NonNull ShadowSpec shadow) {
+        this(Color.TRANSPARENT, rect, shadow, null, CornerSet.ALL);
+    }
+
+    @ColorInt public int bgColor() { return bgColor; }
+    @NonNull public RectSpec rect() { return rect; }
+    @NonNull public ShadowSpec shadow() { return shadow; }
+    @NonNull public Rect paddings() { return new Rect(paddings); }
+    @NonNull public CornerSet corners() { return corners; }
+
+    @Override public boolean equals(Object o) {
+        PatchSpec that;
+        return this == o || (o instanceof PatchSpec &&
+            bgColor == (that = (PatchSpec) o).bgColor &&
+            rect.equals(that.rect) &&
+            shadow.equals(that.shadow) &&
+            paddings.equals(that.paddings) &&
+            corners == that.corners
+        );
+    }
+    @Override public int hashCode() {
+        return 31 * (31 * (31 * (31 * bgColor +
+            rect.hashCode()) +
+            shadow.hashCode()) +
+            paddings.hashCode()) +
+            corners.hashCode();
+    }
+    @Override public String toString() {
+        return appendColor(new StringBuilder("PatchSpec").append('(')
+            .append("bgColor").append('='), bgColor).append(", ")
+            .append("rect").append('=').append(rect).append(", ")
+            .append("shadow").append('=').append(shadow).append(", ")
+            .append("paddings").append('=').append(paddings.toShortString()).append(", ")
+            .append("corners").append('=').append(corners)
+            .append(')').toString();
+    }
+}
@@ -0,0 +1,194 @@
+package net.aquadc.fiftyshades;
+
+import android.graphics.BlurMaskFilter;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.RecordingCanvas;
+import android.graphics.RenderEffect;
+import android.graphics.RenderNode;
+import android.graphics.Shader;
+import androidx.annotation.RequiresApi;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.round;
+import static net.aquadc.fiftyshades.Numbers.ceil;
+
+/**
+ * Draws shadows with blurs provided by the platform, see {@link ShadowBackend}.
+ * Objects are shared by drawables of the same state, see {@link #fits}, and rebuilt only when geometry changes.
+ */
+final class PlatformBlur {
+
+    private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private float maskRadius = -1f;
+    private final RectF shape = new RectF(), frame = new RectF();
+    private Path clip, frameWithHole;
+
+    // last geometry, and its versions used by paths and node
+    private int left, top, right, bottom, cornerRadius;
+    private float dx, dy, radius, spread;
+    private int geometry, pathsGeometry = -1, nodeGeometry = -1;
+
+    /**
+     * Draws outer or inner shadow of a round rect with {@link BlurMaskFilter}.
+     */
+    void drawMask(Canvas canvas, Rect bounds, int cornerRadius, ShadowSpec shadow, boolean inner, int color, ColorFilter filter) {
+        Paint paint = paint(color, filter);
+        if (maskRadius != shadow.radius) {
+            paint.setMaskFilter(new BlurMaskFilter(blurRadius(shadow.radius), BlurMaskFilter.Blur.NORMAL));
+            maskRadius = shadow.radius;
+        }
+        if (inner) {
+            update(bounds, cornerRadius, shadow);
+            if (pathsGeometry != geometry) buildPaths();
+            canvas.save();
+            canvas.clipPath(clip);
+            canvas.drawPath(frameWithHole, paint);
+            canvas.restore();
+        } else {
+            shape.set(bounds);
+            float spread = spread(shadow);
+            shape.inset(-spread, -spread);
+            if (shape.width() <= 0f || shape.height() <= 0f) return;
+            shape.offset(shadow.dx, shadow.dy);
+            float r = max(0f, cornerRadius + spread);
+            canvas.drawRoundRect(shape, r, r, paint);
+        }
+    }
+
+    /*
+     * Gradients fade over GAUSSIAN_FADE_AWAY·radius centered on the edge, along a Gaussian bell rather than its integral,
+     * thus half of shadow opacity lies a bit inside of the shape. A blurred edge deviates from them the least
+     * with σ of SIGMA_PER_RADIUS radii, moved by EDGE_PER_RADIUS radii towards the opaque side.
+     * Both are fitted against gradients, see BackendParityTest.
+     */
+    private static final float SIGMA_PER_RADIUS = .42f, EDGE_PER_RADIUS = .03f;
+    /** Maps shadow radius to platform blur radius, which Skia converts to σ = 0.57735r + .5. */
+    private static float blurRadius(float shadowRadius) {
+        return max(MIN_BLUR_RADIUS, (SIGMA_PER_RADIUS * shadowRadius - .5f) / .57735f);
+    }
+    /** Blur radius is required to be positive, thus shadows sharper than this are slightly softer than gradients. */
+    private static final float MIN_BLUR_RADIUS = .1f;
+    /** Spread of the shape which, being blurred, looks like gradients. */
+    private static float spread(ShadowSpec shadow) {
+        return shadow.spread - EDGE_PER_RADIUS * shadow.radius;
+    }
+
+    /** Extent of blur outside of the shape, 3σ is where Gaussian fades away. */
+    private static int extent(float shadowRadius) {
+        return ceil(3f * SIGMA_PER_RADIUS * shadowRadius + 1.5f);
+    }
+
+    private void buildPaths() {
+        pathsGeometry = geometry;
+        if (clip == null) {
+            clip = new Path();
+            frameWithHole = new Path();
+            frameWithHole.setFillType(Path.FillType.EVEN_ODD);
+        } else {
+            clip.rewind();
+            frameWithHole.rewind();
+        }
+        shape.set(left, top, right, bottom);
+        clip.addRoundRect(shape, cornerRadius, cornerRadius, Path.Direction.CW);
+        // the frame must be wide enough for its outer edge not to be visible through the clip
+        int pad = extent(radius) + ceil(max(abs(dx), abs(dy)) + abs(spread));
+        frame.set(left - pad, top - pad, right + pad, bottom + pad);
+        frameWithHole.addRect(frame, Path.Direction.CW);
+        if (hole()) {
+            float r = max(0f, cornerRadius - spread);
+            frameWithHole.addRoundRect(shape, r, r, Path.Direction.CW);
+        }
+    }
+    /** Sets shape to the hole dropping inner shadow, i.e. shape inset by spread and offset. Returns whether it's not empty. */
+    private boolean hole() {
+        shape.inset(spread, spread);
+        shape.offset(dx, dy);
+        return shape.width() > 0f && shape.height() > 0f;
+    }
+
+    private Object node; // RenderNode
+    private int nodeColor;
+    private ColorFilter nodeFilter;
+
+    /**
+     * Draws outer or inner shadow of a round rect as a {@link RenderNode} blurred with {@link RenderEffect}.
+     */
+    @RequiresApi(31) void drawEffect(Canvas canvas, Rect bounds, int cornerRadius, ShadowSpec shadow, boolean inner, int color, ColorFilter filter) {
+        update(bounds, cornerRadius, shadow);
+        RenderNode node = (RenderNode) this.node;
+        if (node == null) this.node = node = new RenderNode("FiftyShades:shadow");
+        int ext = extent(radius) + ceil(abs(spread));
+        boolean geometryChanged = nodeGeometry != geometry;
+        if (geometryChanged) {
+            nodeGeometry = geometry;
+            float blur = blurRadius(radius);
+            node.setRenderEffect(RenderEffect.createBlurEffect(blur, blur, Shader.TileMode.DECAL));
+            // inner shadow node covers the shape and has an offset hole, outer one covers the offset shape
+            int x = inner ? 0 : round(dx), y = inner ? 0 : round(dy);
+            node.setPosition(left + x - ext, top + y - ext, right + x + ext, bottom + y + ext);
+        }
+        if (geometryChanged || !node.hasDisplayList() || nodeColor != color || nodeFilter != filter) {
+            nodeColor = color;
+            nodeFilter = filter;
+            Paint paint = paint(color, filter);
+            paint.setMaskFilter(null);
+            maskRadius = -1f;
+            RecordingCanvas rc = node.beginRecording();
+            try {
+                shape.set(ext, ext, ext + right - left, ext + bottom - top);
+                if (inner) {
+                    frame.set(0f, 0f, right - left + 2 * ext, bottom - top + 2 * ext);
+                    float r = max(0f, cornerRadius - spread);
+                    if (hole()) rc.drawDoubleRoundRect(frame, 0f, 0f, shape, r, r, paint);
+                    else rc.drawRect(frame, paint);
+                } else {
+                    shape.inset(-spread, -spread);
+                    float r = max(0f, cornerRadius + spread);
+                    if (shape.width() > 0f && shape.height() > 0f) rc.drawRoundRect(shape, r, r, paint);
+                }
+            } finally {
+                node.endRecording();
+            }
+        }
+        if (inner) {
+            if (pathsGeometry != geometry) buildPaths();
+            canvas.save();
+            canvas.clipPath(clip);
+            canvas.drawRenderNode(node);
+            canvas.restore();
+        } else {
+            canvas.drawRenderNode(node);
+        }
+    }
+
+    private Paint paint(int color, ColorFilter filter) {
+        Paint paint = this.paint;
+        paint.setColor(color);
+        paint.setColorFilter(filter);
+        return paint;
+    }
+
+    /** Whether drawing the given geometry won't rebuild anything, i.e. it is the last drawn one, or nothing was drawn yet. */
+    boolean fits(Rect bounds, int cornerRadius, ShadowSpec shadow) {
+        return geometry == 0 || same(bounds, cornerRadius, shadow);
+    }
+    private boolean same(Rect bounds, int cornerRadius, ShadowSpec shadow) {
+        return left == bounds.left && top == bounds.top && right == bounds.right && bottom == bounds.bottom &&
+            this.cornerRadius == cornerRadius && dx == shadow.dx && dy == shadow.dy && radius == shadow.radius && spread == spread(shadow);
+    }
+
+    /** Remembers geometry, bumping its version if it has changed. */
+    private void update(Rect bounds, int cornerRadius, ShadowSpec shadow) {
+        if (same(bounds, cornerRadius, shadow)) return;
+        geometry++;
+        left = bounds.left; top = bounds.top; right = bounds.right; bottom = bounds.bottom;
+        this.cornerRadius = cornerRadius;
+        dx = shadow.dx; dy = shadow.dy; radius = shadow.radius; spread = spread(shadow);
+    }
+}
@@ -0,0 +1,134 @@
+package net.aquadc.fiftyshades;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import static java.lang.Math.min;
+
+/**
+ * Draws a symmetric round rect with shadow from the top left quadrant of its 9-patch,
+ * see {@link RectWithShadow#createQuadrant}. Other quadrants are mirrored with canvas transforms.
+ * Like an inset drawable from {@link RectWithShadow}, it draws shadow out of bounds.
+ */
+final class QuadrantDrawable extends Drawable {
+
+    private final QuadrantState state;
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect corner = new Rect(), top = new Rect(), left = new Rect(), middle = new Rect();
+    private final RectF dst = new RectF();
+
+    /**
+     * Constructs new QuadrantDrawable.
+     * @param width  intrinsic width, same as of the full patch without paddings
+     * @param height intrinsic height, same as of the full patch without paddings
+     */
+    QuadrantDrawable(Bitmap quadrant, Rect paddings, int width, int height) {
+        this(new QuadrantState(quadrant, new Rect(paddings), width, height));
+    }
+    private QuadrantDrawable(QuadrantState state) {
+        this.state = state;
+        Bitmap quadrant = state.quadrant;
+        if (quadrant == null) return; // copy of a released drawable
+        int w = quadrant.getWidth() - 1, h = quadrant.getHeight() - 1;
+        corner.set(0, 0, w, h);
+        top.set(w, 0, w + 1, h);
+        left.set(0, h, w, h + 1);
+        middle.set(w, h, w + 1, h + 1);
+    }
+
+    /** Detaches the bitmap. The drawable and its copies draw nothing afterwards. */
+    Bitmap release() {
+        Bitmap quadrant = state.quadrant;
+        state.quadrant = null;
+        return quadrant;
+    }
+
+    @Override public void draw(@NonNull Canvas canvas) {
+        Bitmap quadrant = state.quadrant;
+        if (quadrant == null) return;
+        Rect bounds = getBounds(), pad = state.paddings;
+        float l = bounds.left - pad.left, t = bounds.top - pad.top, r = bounds.right + pad.right, b = bounds.bottom + pad.bottom;
+        float cx = (l + r) / 2f, cy = (t + b) / 2f;
+        // corners are squeezed when there's not enough space, like in a 9-patch
+        float cw = min(corner.right, cx - l), ch = min(corner.bottom, cy - t);
+
+        dst.set(l + cw, t + ch, r - cw, b - ch);
+        if (dst.width() > 0f && dst.height() > 0f) canvas.drawBitmap(quadrant, middle, dst, paint);
+        canvas.save();
+        for (int i = 0; i < 4; i++) {
+            // top left, top right, bottom right, bottom left
+            if (i > 0) canvas.scale(i == 2 ? 1f : -1f, i == 2 ? -1f : 1f, cx, cy);
+            dst.set(l, t, l + cw, t + ch);
+            canvas.drawBitmap(quadrant, corner, dst, paint);
+            if (i == 0 || i == 3) { // top and bottom
+                dst.set(l + cw, t, r - cw, t + ch);
+                if (dst.width() > 0f) canvas.drawBitmap(quadrant, top, dst, paint);
+            }
+            if (i == 0 || i == 1) { // left and right
+                dst.set(l, t + ch, l + cw, b - ch);
+                if (dst.height() > 0f) canvas.drawBitmap(quadrant, left, dst, paint);
+            }
+        }
+        canvas.restore();
+    }
+
+    @Override public int getIntrinsicWidth() {
+        return state.quadrant == null ? -1 : state.width;
+    }
+    @Override public int getIntrinsicHeight() {
+        return state.quadrant == null ? -1 : state.height;
+    }
+    @Override public boolean getPadding(@NonNull Rect padding) {
+        padding.set(0, 0, 0, 0); // same as negative insets compensating 9-patch paddings
+        return true;
+    }
+
+    @Override public int getAlpha() { return paint.getAlpha(); }
+    @Override public void setAlpha(int alpha) {
+        if (paint.getAlpha() != alpha) {
+            paint.setAlpha(alpha);
+            invalidateSelf();
+        }
+    }
+
+    @Nullable @Override public ColorFilter getColorFilter() { return paint.getColorFilter(); }
+    @Override public void setColorFilter(@Nullable ColorFilter colorFilter) {
+        paint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+
+    /** Shares the quadrant between copies. Alpha and colour filter are not a part of it, thus mutate() is not needed. */
+    @Override public ConstantState getConstantState() {
+        return state;
+    }
+
+    private static final class QuadrantState extends ConstantState {
+        Bitmap quadrant; // null when released
+        final Rect paddings;
+        final int width, height;
+        QuadrantState(Bitmap quadrant, Rect paddings, int width, int height) {
+            this.quadrant = quadrant;
+            this.paddings = paddings;
+            this.width = width;
+            this.height = height;
+        }
+        @NonNull @Override public Drawable newDrawable() {
+            return new QuadrantDrawable(this);
+        }
+        @Override public int getChangingConfigurations() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package net.aquadc.fiftyshades;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Matrix;
+import android.graphics.Shader;
+
+import java.nio.ByteBuffer;
+
+import static net.aquadc.fiftyshades.GaussianInterpolator.GAUSSIAN;
+
+/**
+ * Process-wide pre-rasterized Gaussian falloff.
+ * It is an ALPHA_8 texture, thus it gets tinted with {@link android.graphics.Paint#getColor()}:
+ * a single texture serves any shadow colour.
+ */
+final class Ramp {
+    private Ramp() {}
+
+    static final int SIZE = 256;
+
+    private static final float TAIL = GAUSSIAN.getInterpolation(1f);
+    /** Alpha at t∈[0,1], rising from exactly 0 at the outer shadow boundary to exactly 1 at the inner one. */
+    static float rise(float t) {
+        return (GAUSSIAN.getInterpolation(1f - t) - TAIL) / (1f - TAIL);
+    }
+
+    private static Bitmap bitmap;
+    private static BitmapShader horizontal, vertical;
+
+    /** SIZE×1 ALPHA_8 texture of {@link #rise(float)}. */
+    static synchronized Bitmap bitmap() {
+        Bitmap bitmap = Ramp.bitmap;
+        if (bitmap == null) {
+            byte[] alpha = new byte[SIZE];
+            for (int i = 0; i < SIZE; i++)
+                alpha[i] = (byte) Math.round(255 * rise((i + .5f) / SIZE));
+            (Ramp.bitmap = bitmap = Bitmap.createBitmap(SIZE, 1, Bitmap.Config.ALPHA_8))
+                .copyPixelsFromBuffer(ByteBuffer.wrap(alpha));
+        }
+        return bitmap;
+    }
+
+    /** Shader rising along x∈[0,1]; use canvas transforms to fit it. */
+    static synchronized Shader horizontal() {
+        BitmapShader shader = horizontal;
+        if (shader == null) {
+            Matrix matrix = new Matrix();
+            matrix.setScale(1f / SIZE, 1f);
+            (horizontal = shader = newShader()).setLocalMatrix(matrix);
+        }
+        return shader;
+    }
+
+    /** Shader rising along y∈[0,1]; use canvas transforms to fit it. */
+    static synchronized Shader vertical() {
+        BitmapShader shader = vertical;
+        if (shader == null) {
+            Matrix matrix = new Matrix();
+            matrix.setScale(1f / SIZE, 1f);
+            matrix.postRotate(90f); // (x, y) -> (-y, x)
+            (vertical = shader = newShader()).setLocalMatrix(matrix);
+        }
+        return shader;
+    }
+
+    private static BitmapShader newShader() {
+        return new BitmapShader(bitmap(), Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+    }
+}
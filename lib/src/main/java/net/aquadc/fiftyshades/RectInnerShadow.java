@@ -1,18 +1,19 @@
 package net.aquadc.fiftyshades;
 
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.LinearGradient;
 import android.graphics.Paint;
-import android.graphics.Path;
-import android.graphics.RadialGradient;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.Shader;
+import android.os.Build;
 import androidx.annotation.ColorInt;
 import androidx.annotation.NonNull;
 import androidx.annotation.Px;
 
+import java.nio.ByteBuffer;
+
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 import static java.lang.Math.round;
@@ -24,16 +25,16 @@ import static net.aquadc.fiftyshades.Numbers.ceil;
 public final class RectInnerShadow extends Shadow {
 
     RectInnerShadow(ShadowState state) {
-        super(state, Paint.DITHER_FLAG | Paint.ANTI_ALIAS_FLAG);
+        super(state, Paint.DITHER_FLAG | Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
     }
     public RectInnerShadow() {
         this(0, new ShadowSpec());
     }
     public RectInnerShadow(@Px int cornerRadius, @NonNull ShadowSpec shadow) {
-        super(cornerRadius, new ShadowSpec(shadow), true, Paint.DITHER_FLAG | Paint.ANTI_ALIAS_FLAG);
+        super(cornerRadius, new ShadowSpec(shadow), true, Paint.DITHER_FLAG | Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
     }
     public RectInnerShadow(@Px int cornerRadius, @Px float dx, @Px float dy, @Px float radius, @ColorInt int color) {
-        super(cornerRadius, new ShadowSpec(dx, dy, radius, color), true, Paint.DITHER_FLAG | Paint.ANTI_ALIAS_FLAG);
+        super(cornerRadius, new ShadowSpec(dx, dy, radius, color), true, Paint.DITHER_FLAG | Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
     }
 
     // setters
@@ -43,43 +44,28 @@ public final class RectInnerShadow extends Shadow {
     public RectInnerShadow shadowDx(@Px float dx) { return (RectInnerShadow) super.shadowDx(dx); }
     public RectInnerShadow shadowDy(@Px float dy) { return (RectInnerShadow) super.shadowDy(dy); }
     public RectInnerShadow shadowRadius(@Px float radius) { return (RectInnerShadow) super.shadowRadius(radius); }
+    public RectInnerShadow shadowSpread(@Px float spread) { return (RectInnerShadow) super.shadowSpread(spread); }
     @Override public RectInnerShadow shadow(@NonNull ShadowSpec shadow) { return (RectInnerShadow) super.shadow(shadow); }
+    @Override public RectInnerShadow backend(@NonNull ShadowBackend backend) { return (RectInnerShadow) super.backend(backend); }
 
     // invalidation
 
     @Override public void setBounds(int left, int top, int right, int bottom) {
-        int corners = boundedCornerRadius();
+        int spread = spread();
+        int corners = boundedCornerRadius(), holeCorners = boundedCornerRadius(spread);
         super.setBounds(left, top, right, bottom);
 
         // quite rare cases when we're extremely small
-        if (corners != boundedCornerRadius()) radiusInvalidated();
+        if (corners != boundedCornerRadius() || holeCorners != boundedCornerRadius(spread)) radiusInvalidated();
     }
 
-    @Override void radiusInvalidated() {
-        cornerShader = null;
-        arcBounds.left = Integer.MIN_VALUE;
-        edgeShaders[0] = null; // offsets of right and bottom gradients will change
-    }
-    @Override void shadowOffsetInvalidated() {
-        arcBounds.left = Integer.MIN_VALUE;
-    }
-    @Override void shadowRadiusInvalidated() {
-        cornerShader = null;
-        arcBounds.left = Integer.MIN_VALUE;
-        edgeShaders[0] = null;
-    }
-    @Override void shadowColorInvalidated() {
-        cornerShader = null;
-        edgeShaders[0] = null;
-    }
+    @Override void radiusInvalidated() { cornerShader = null; }
+    @Override void shadowRadiusInvalidated() { cornerShader = null; }
+    @Override void shadowColorInvalidated() { } // gradients are colourless, tinted by paint colour
 
     // drawing
 
-    private final int[] radialColors = new int[3];
-    private final float[] radialPositions = { 0f, Float.NaN, 1f };
-    private RadialGradient cornerShader;
-    private final Path[] cornerPaths = { new Path(), new Path(), new Path(), new Path() };
-    private final LinearGradient[] edgeShaders = new LinearGradient[4];
+    private Shader cornerShader;
     @Override public void draw(@NonNull Canvas canvas) {
         Rect bounds;
         int width, height;
@@ -87,156 +73,275 @@ public final class RectInnerShadow extends Shadow {
         if (Color.alpha(shadow.color) == 0 ||
             (width = (bounds = getBounds()).width()) <= 0 ||
             (height = bounds.height()) <= 0) return; // TODO fix self-overlap for extra small dimensions
+        boolean metrics = ShadowMetrics.enabled;
+        long start = metrics ? ShadowMetrics.begin(ShadowMetrics.RECT_INNER_SHADOW) : 0L;
+        if (drawPlatform(canvas)) {
+            if (metrics) ShadowMetrics.end(ShadowMetrics.RECT_INNER_SHADOW, start, 1);
+            return;
+        }
 
-        canvas.save();
-        canvas.translate(bounds.left + round(shadow.dx), bounds.top + round(shadow.dy));
-
-        int cornerRadius = boundedCornerRadius();
-        draw(canvas, cornerRadius, width, height);
-        canvas.restore();
+        // spread shrinks the hole dropping shadow, in CSS manner
+        int spread = spread();
+        int holeWidth = width + 2 * spread, holeHeight = height + 2 * spread;
+        if (holeWidth <= 0 || holeHeight <= 0) { // no hole, the whole shape is in shadow
+            int cornerRadius = boundedCornerRadius();
+            paint.setShader(null);
+            paint.setColor(paintColor());
+            shape.set(bounds);
+            canvas.drawRoundRect(shape, cornerRadius, cornerRadius, paint);
+        } else {
+            canvas.save();
+            canvas.translate(bounds.left - spread + round(shadow.dx), bounds.top - spread + round(shadow.dy));
+            draw(canvas, boundedCornerRadius(), boundedCornerRadius(spread), holeWidth, holeHeight, spread);
+            canvas.restore();
+        }
+        if (metrics) ShadowMetrics.end(ShadowMetrics.RECT_INNER_SHADOW, start, 1);
     }
 
-    private final RectF arcBounds = new RectF(Integer.MIN_VALUE, 0, 0, 0);
-    private void draw(Canvas canvas, int cornerRadius, int width, int height) {
+    // Geometry of the current pass. All gradients are shared and defined in unit space,
+    // they are fit with canvas transforms, so nothing gets rebuilt when shadow or bounds are animated.
+    private int d, cornerRadius;
+    private float edgeRad, cornerCenter, cornerGradRad;
+    private final RectF shape = new RectF();
+    private final Rect region = new Rect();
+    /**
+     * Draws shadow of the hole which is at (0, 0), inside of the shape.
+     * Edges of the shape are offset from edges of the hole by shadow offset, and moved apart by spread.
+     */
+    private void draw(Canvas canvas, int cornerRadius, int holeRadius, int width, int height, int spread) {
         ShadowSpec shadow = state.shadow;
         float shRad = shadow.radius/2f;
-        int r = max(cornerRadius, ceil(shRad));
+        int r = max(max(cornerRadius, holeRadius), ceil(shRad)); // corner squares must contain arcs of both shape and hole
         int d = 2 * r;
 
-        if (cornerShader == null) buildCornerShader(cornerRadius);
-        if (arcBounds.left == Integer.MIN_VALUE) buildCornerPaths(cornerRadius + cornerRadius, d, shadow);
-        if (edgeShaders[0] == null) buildEdgeShaders(d);
+        this.d = d;
+        this.cornerRadius = cornerRadius;
+        edgeRad = max(shRad, .5f); // don't let ramp space degenerate
+        if (holeRadius > shRad) {
+            cornerCenter = holeRadius;
+            cornerGradRad = holeRadius + shRad;
+        } else {
+            cornerCenter = shRad;
+            cornerGradRad = max(2*shRad, 1f);
+        }
+        if (cornerShader == null)
+            cornerShader = ShaderCache.corner(true, 2*shRad / cornerGradRad, cornerGradRad);
 
-        paint.setShader(edgeShaders[0]);
+        paint.setColor(paintColor());
         int dxInt = round(shadow.dx);
         int dyInt = round(shadow.dy);
-        int cx = -dxInt + r, cy = -dyInt + r;
-        int cyp = cy + max(0, dyInt), cyn = cy + min(0, dyInt);
-        canvas.drawRect(-dxInt, cyp, shRad, height - d + cyn, paint);
-
-        int cxd = cx + dxInt, cyd = cy + dyInt;
-        boolean negDx = dxInt < 0f, negDy = dyInt < 0f;
-        drawCorner(canvas,
-            0, -dxInt, -dyInt, cxd, cyd,
-            negDy, -dxInt, cyd, Integer.MAX_VALUE, Integer.MAX_VALUE, 0,
-            negDx, cxd, -dyInt, Integer.MAX_VALUE, Integer.MAX_VALUE, 1
+        // offsets of the hole from the left, top, right, and bottom edges of the shape
+        int el = dxInt - spread, et = dyInt - spread, er = dxInt + spread, eb = dyInt + spread;
+        shape.set(-el, -et, width - er, height - eb); // we're already at the hole, shape is around it
+        int cxp = r - min(0, el), cxn = r - max(0, er);
+        int cyp = r - min(0, et), cyn = r - max(0, eb);
+        fill(canvas, 0, -1, -el, cyp, shRad, height - d + cyn);
+
+        region.set(-el, -et, cxp, cyp);
+        drawCorner(canvas, 0,
+            -el, -et, r, r,
+            et < 0, -el, r, Integer.MAX_VALUE, Integer.MAX_VALUE, 0,
+            el < 0, r, -et, Integer.MAX_VALUE, Integer.MAX_VALUE, 1
         );
 
-        paint.setShader(edgeShaders[1]);
-        int cxp = cx + max(0, dxInt), cxn = cx + min(0, dxInt);
-        canvas.drawRect(cxp, -dyInt, width - d + cxn, shRad, paint);
+        fill(canvas, 1, -1, cxp, -et, width - d + cxn, shRad);
 
         canvas.translate(width - d, 0f);
-        boolean posDx = dxInt > 0f;
-        drawCorner(canvas,
-            1, cxd, -dyInt, d - dxInt, cyd,
-            posDx, Integer.MIN_VALUE, -dyInt, cxd, Integer.MAX_VALUE, 1,
-            negDy, Integer.MIN_VALUE, cyd, d - dxInt, Integer.MAX_VALUE, 2
+        shape.offset(-width + d, 0f);
+        region.set(cxn, -et, d - er, cyp);
+        drawCorner(canvas, 1,
+            r, -et, d - er, r,
+            er > 0, Integer.MIN_VALUE, -et, r, Integer.MAX_VALUE, 1,
+            et < 0, Integer.MIN_VALUE, r, d - er, Integer.MAX_VALUE, 2
         );
 
-        paint.setShader(edgeShaders[2]);
-        canvas.drawRect(d - cxp - shRad, cyp, d - dxInt, height - d + cyn, paint);
+        fill(canvas, 2, -1, r + min(0, er) - shRad, cyp, d - er, height - d + cyn);
 
         canvas.translate(0f, height - d);
-        boolean posDy = dyInt > 0f;
-        drawCorner(canvas,
-            2, cxd, cyd, d - dxInt, d - dyInt,
-            posDy, Integer.MIN_VALUE, Integer.MIN_VALUE, d - dxInt, cyd, 2,
-            posDx, Integer.MIN_VALUE, Integer.MIN_VALUE, cxd, d - dyInt, 3
+        shape.offset(0f, -height + d);
+        region.set(cxn, cyn, d - er, d - eb);
+        drawCorner(canvas, 2,
+            r, r, d - er, d - eb,
+            eb > 0, Integer.MIN_VALUE, Integer.MIN_VALUE, d - er, r, 2,
+            er > 0, Integer.MIN_VALUE, Integer.MIN_VALUE, r, d - eb, 3
         );
 
         canvas.translate(-width + d, 0f);
-        paint.setShader(edgeShaders[3]);
-        canvas.drawRect(cxp, d - cyp - shRad, width - d + cxn, d - dyInt, paint);
-        drawCorner(canvas,
-            3, -dxInt, cyd, cxd, d - dyInt,
-            negDx, cxd, Integer.MIN_VALUE, Integer.MAX_VALUE, d - dyInt, 3,
-            posDy, -dxInt, Integer.MIN_VALUE, Integer.MAX_VALUE, cyd, 0
+        shape.offset(width - d, 0f);
+        fill(canvas, 3, -1, cxp, r + min(0, eb) - shRad, width - d + cxn, d - eb);
+        region.set(-el, cyn, cxp, d - eb);
+        drawCorner(canvas, 3,
+            -el, r, r, d - eb,
+            el < 0, r, Integer.MIN_VALUE, Integer.MAX_VALUE, d - eb, 3,
+            eb > 0, -el, Integer.MIN_VALUE, Integer.MAX_VALUE, r, 0
         );
     }
+    /** Fills region ∩ shape: with edge gradients before and after the corner one, if the shadow is offset. */
     private void drawCorner(
-        Canvas canvas, int which, int cl, int ct, int cr, int cb,
+        Canvas canvas, int corner, int cl, int ct, int cr, int cb,
         boolean before, int bl, int bt, int br, int bb, int bs,
         boolean after, int al, int at, int ar, int ab, int as
     ) {
-        Path corner = cornerPaths[which];
-        if (before || after) {
-            if (before) {
-                canvas.save();
-                canvas.clipRect(bl, bt, br, bb);
-                paint.setShader(edgeShaders[bs]);
-                canvas.drawPath(corner, paint);
-                canvas.restore();
+        Rect reg = region;
+        if (before)
+            fill(canvas, bs, corner, max(reg.left, bl), max(reg.top, bt), min(reg.right, br), min(reg.bottom, bb));
+        fill(canvas, CORNER + corner, corner, max(reg.left, cl), max(reg.top, ct), min(reg.right, cr), min(reg.bottom, cb));
+        if (after)
+            fill(canvas, as, corner, max(reg.left, al), max(reg.top, at), min(reg.right, ar), min(reg.bottom, ab));
+    }
+
+    private static final int CORNER = 4;
+    private final RectF mapped = new RectF();
+    /**
+     * Fills the given rect, or its intersection with shape if near a corner,
+     * in space of the given gradient: 0..3 are left, top, right, bottom edges,
+     * {@link #CORNER}+0..3 are top-left, top-right, bottom-right, bottom-left corners.
+     * @param corner which corner of shape the rect is near to, or -1 if the rect is known to lie inside shape;
+     *               squeezed rects can be near to another corner, or to several ones
+     */
+    private void fill(Canvas canvas, int gradient, int corner, float l, float t, float r, float b) {
+        if (l >= r || t >= b) return;
+        float ox, oy, sx, sy;
+        switch (gradient) {
+            case 0: ox = edgeRad; oy = 0f; sx = -2*edgeRad; sy = 1f; break;
+            case 1: ox = 0f; oy = edgeRad; sx = 1f; sy = -2*edgeRad; break;
+            case 2: ox = d - edgeRad; oy = 0f; sx = 2*edgeRad; sy = 1f; break;
+            case 3: ox = 0f; oy = d - edgeRad; sx = 1f; sy = 2*edgeRad; break;
+            case CORNER: ox = oy = cornerCenter; sx = -cornerGradRad; sy = -cornerGradRad; break;
+            case CORNER + 1: ox = oy = cornerCenter; sx = cornerGradRad; sy = -cornerGradRad; break;
+            case CORNER + 2: ox = oy = cornerCenter; sx = cornerGradRad; sy = cornerGradRad; break;
+            case CORNER + 3: ox = oy = cornerCenter; sx = -cornerGradRad; sy = cornerGradRad; break;
+            default: throw new AssertionError();
+        }
+        paint.setShader(gradient >= CORNER ? cornerShader : (gradient & 1) == 0 ? Ramp.horizontal() : Ramp.vertical());
+
+        // Squares of rounded corners. Rects missing them are drawn as is, ones crossing an arc are split
+        // into rects outside of the square, and an arc or a piece of disk mask inside of it. No clipping needed.
+        int cr = cornerRadius;
+        boolean right = false, bottom = false;
+        float sl = 0f, st = 0f;
+        if (corner >= 0) {
+            RectF shape = this.shape;
+            l = max(l, shape.left); // nothing is visible outside of the shape
+            t = max(t, shape.top);
+            r = min(r, shape.right);
+            b = min(b, shape.bottom);
+            if (l >= r || t >= b) return;
+            corner = -1;
+            for (int i = 0; i < 4; i++) {
+                boolean ri = i == 1 || i == 2, bi = i >= 2;
+                float il = ri ? shape.right - cr : shape.left, it = bi ? shape.bottom - cr : shape.top;
+                if (l < il + cr && r > il && t < it + cr && b > it) {
+                    if (corner >= 0) { // squeezed between two corners, split between them
+                        if (bi != bottom) {
+                            float y = shape.top + cr;
+                            fill(canvas, gradient, i, l, t, r, y);
+                            fill(canvas, gradient, i, l, y, r, b);
+                        } else {
+                            float x = shape.left + cr;
+                            fill(canvas, gradient, i, l, t, x, b);
+                            fill(canvas, gradient, i, x, t, r, b);
+                        }
+                        return;
+                    }
+                    corner = i;
+                    right = ri;
+                    bottom = bi;
+                    sl = il;
+                    st = it;
+                }
             }
-            canvas.save();
-            canvas.clipRect(cl, ct, cr, cb);
-            paint.setShader(cornerShader);
-            canvas.drawPath(corner, paint);
-            canvas.restore();
-            if (after) {
-                canvas.save();
-                canvas.clipRect(al, at, ar, ab);
-                paint.setShader(edgeShaders[as]);
-                canvas.drawPath(corner, paint);
-                canvas.restore();
+        }
+        // part of the rect within the square, it shares a corner with the rect, and arc center
+        float bl = max(l, sl), bt = max(t, st), br = min(r, sl + cr), bb = min(b, st + cr);
+        float cx = right ? sl : sl + cr, cy = bottom ? st : st + cr;
+        boolean outside = false, masked = false;
+        if (corner >= 0) {
+            float fx = (right ? br : bl) - cx, fy = (bottom ? bb : bt) - cy; // the farthest point from center
+            float nx = (right ? bl : br) - cx, ny = (bottom ? bt : bb) - cy; // the nearest one
+            if (fx * fx + fy * fy <= cr * cr) {
+                corner = -1; // inside of the arc
+            } else if (nx * nx + ny * ny >= cr * cr) {
+                outside = true; // just skip the square
+            } else if (bl != sl || bt != st || br != sl + cr || bb != st + cr) {
+                masked = true; // crosses the arc
+                if ((canvas.isHardwareAccelerated() && Build.VERSION.SDK_INT < 28) || // old HWUI can't tint alpha bitmaps with shaders
+                    bl != (int) bl || bt != (int) bt || br != (int) br || bb != (int) bb) { // can't map to whole texels
+                    fillClipped(canvas, l, t, r, b, ox, oy, sx, sy);
+                    return;
+                }
             }
+        }
+
+        canvas.translate(ox, oy);
+        canvas.scale(sx, sy);
+        if (corner < 0) {
+            fillRect(canvas, l, t, r, b, ox, oy, sx, sy);
         } else {
-            paint.setShader(cornerShader);
-            canvas.drawPath(corner, paint);
+            // rect minus the piece of square, two rects at most
+            if (bottom) fillRect(canvas, l, t, r, bt, ox, oy, sx, sy);
+            else fillRect(canvas, l, bb, r, b, ox, oy, sx, sy);
+            if (right) fillRect(canvas, l, bt, bl, bb, ox, oy, sx, sy);
+            else fillRect(canvas, br, bt, r, bb, ox, oy, sx, sy);
+
+            if (masked) {
+                // gradient shader tints the alpha mask, the disk is symmetric, thus mirroring is just picking other texels
+                int ml = (int) (sx < 0f ? cx - br : bl - cx) + cr, mt = (int) (sy < 0f ? cy - bb : bt - cy) + cr;
+                texels.set(ml, mt, ml + (int) (br - bl), mt + (int) (bb - bt));
+                map(bl, bt, br, bb, ox, oy, sx, sy);
+                canvas.drawBitmap(disk(cr), texels, mapped, paint);
+            } else if (!outside) { // a quarter of circle inscribed into the square
+                map(cx - cr, cy - cr, cx + cr, cy + cr, ox, oy, sx, sy);
+                right ^= sx < 0f; // mirrored in gradient space
+                bottom ^= sy < 0f;
+                canvas.drawArc(mapped, bottom ? (right ? 0f : 90f) : (right ? 270f : 180f), 90f, true, paint);
+            }
         }
+        canvas.scale(1f / sx, 1f / sy);
+        canvas.translate(-ox, -oy);
     }
-    private void buildCornerShader(int cornerRad) {
-        ShadowSpec shadow = state.shadow;
-        int shCol = shadow.color;
-        float shRad = shadow.radius/2f;
-        if (cornerRad > shRad) {
-            radialColors[0] = radialColors[1] = 0xFFFFFF & shCol;
-            radialColors[2] = shCol;
-            float gRad = cornerRad + shRad;
-            radialPositions[1] = 1 - (shRad + shRad) / gRad;
-            cornerShader = new RadialGradient(cornerRad, cornerRad, gRad, radialColors, radialPositions, Shader.TileMode.CLAMP);
-        } else {
-            cornerShader = new RadialGradient(shRad, shRad, 2*shRad, 0xFFFFFF & shCol, shCol, Shader.TileMode.CLAMP);
+    private final Rect texels = new Rect();
+    private Bitmap disk;
+    /** Antialiased ALPHA_8 disk of the given radius, for pieces of shape corners which can't be drawn with arcs. */
+    private Bitmap disk(int radius) {
+        Bitmap disk = this.disk;
+        int size = 2 * radius;
+        if (disk == null || disk.getWidth() != size) {
+            disk = Bitmap.createBitmap(size, size, Bitmap.Config.ALPHA_8);
+            int stride = disk.getRowBytes();
+            byte[] alpha = new byte[stride * size];
+            for (int y = 0; y < size; y++)
+                for (int x = 0; x < size; x++) {
+                    float dist = (float) Math.hypot(x + .5f - radius, y + .5f - radius);
+                    alpha[y * stride + x] = (byte) round(255 * max(0f, min(1f, radius - dist + .5f)));
+                }
+            disk.copyPixelsFromBuffer(ByteBuffer.wrap(alpha));
+            this.disk = disk;
         }
+        return disk;
     }
-    private void buildCornerPaths(int cornerD, int d, ShadowSpec shadow) {
-        int dxInt = round(shadow.dx);
-        int dyInt = round(shadow.dy);
-        arcBounds.set(-dxInt, -dyInt, -dxInt + cornerD, -dyInt + cornerD); // we're already at shadow(dx,dy), shape is at (-dx,-dy)
-
-        int cx = -dxInt + d/2;
-        int cxp = cx + max(0, dxInt);
-        int cy = -dyInt + d/2;
-        int cyp = cy + max(0, dyInt);
-        buildCornerPath(0, -dxInt, cyp, 180f, cxp, -dyInt, cxp, cyp);
-        int cxn = cx + min(0, dxInt);
-        arcBounds.offset(d - cornerD, 0f);
-        buildCornerPath(1, cxn, -dyInt, -90f, -dxInt + d, cyp, cxn, cyp);
-        int cyn = cy + min(0, dyInt);
-        arcBounds.offset(0f, d - cornerD);
-        buildCornerPath(2, -dxInt + d, cyn, 0f, cxn, -dyInt + d, cxn, cyn);
-        arcBounds.offset(-d + cornerD, 0f);
-        buildCornerPath(3, cxp, -dyInt + d, 90f, -dxInt, cyn, cxp, cyn);
-        arcBounds.offset(0f, -d + cornerD);
+    private void fillRect(Canvas canvas, float l, float t, float r, float b, float ox, float oy, float sx, float sy) {
+        if (l < r && t < b) {
+            map(l, t, r, b, ox, oy, sx, sy);
+            canvas.drawRect(mapped, paint);
+        }
     }
-    // TODO sometimes we don't need a Path, a quarter of circle is enough
-    private void buildCornerPath(int which, int sx, int sy, float sta, int nx, int ny, int cx, int cy) {
-        Path p = cornerPaths[which];
-        p.rewind();
-        p.moveTo(sx, sy);
-        p.arcTo(arcBounds, sta, 90f, false);
-        p.lineTo(nx, ny);
-        p.lineTo(cx, cy);
-        p.close();
+    private void fillClipped(Canvas canvas, float l, float t, float r, float b, float ox, float oy, float sx, float sy) {
+        canvas.save();
+        canvas.translate(ox, oy);
+        canvas.scale(sx, sy);
+        map(l, t, r, b, ox, oy, sx, sy);
+        canvas.clipRect(mapped);
+        map(shape.left, shape.top, shape.right, shape.bottom, ox, oy, sx, sy);
+        canvas.drawRoundRect(mapped, cornerRadius / Math.abs(sx), cornerRadius / Math.abs(sy), paint);
+        canvas.restore();
     }
-    private void buildEdgeShaders(int d) {
-        ShadowSpec shadow = state.shadow;
-        float rad = shadow.radius/2f;
-        int col = shadow.color, tra = 0xFFFFFF & col;
-        edgeShaders[0] = new LinearGradient(-rad, 0f, rad, 0f, col, tra, Shader.TileMode.CLAMP);
-        edgeShaders[1] = new LinearGradient(0f, -rad, 0f, rad, col, tra, Shader.TileMode.CLAMP);
-        edgeShaders[2] = new LinearGradient(d - rad, 0f, d + rad, 0f, tra, col, Shader.TileMode.CLAMP);
-        edgeShaders[3] = new LinearGradient(0f, d - rad, 0f, d + rad, tra, col, Shader.TileMode.CLAMP);
+    private void map(float l, float t, float r, float b, float ox, float oy, float sx, float sy) {
+        l = (l - ox) / sx;
+        r = (r - ox) / sx;
+        t = (t - oy) / sy;
+        b = (b - oy) / sy;
+        mapped.set(min(l, r), min(t, b), max(l, r), max(t, b));
     }
 
 }
@@ -2,29 +2,27 @@ package net.aquadc.fiftyshades;
 
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.NinePatch;
 import android.graphics.Paint;
+import android.graphics.Rect;
 import android.graphics.RectF;
+import android.graphics.RenderNode;
 import android.os.Build;
 import android.util.FloatProperty;
 import android.util.IntProperty;
 import android.util.Property;
-import android.util.SparseArray;
 import android.view.View;
 import androidx.annotation.NonNull;
 import androidx.annotation.RequiresApi;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.util.ArrayList;
-
 import static java.lang.Float.floatToRawIntBits;
 import static java.lang.Float.intBitsToFloat;
 import static net.aquadc.fiftyshades.Numbers.multiplyAlpha;
-import static net.aquadc.fiftyshades.ViewDrawablePool.scrapUnused;
-import static net.aquadc.fiftyshades.ViewDrawablePool.unsafeDrawableFor;
-import static net.aquadc.fiftyshades.ViewDrawablePool.usedMarkFor;
 
 /**
- * ItemDecoration which draws a round rect with a shadow for each item.
+ * ItemDecoration which draws a round rect with a shadow, or both outer and inner shadows, for each item.
  */
 @RequiresApi(11) public final class RectItemsWithShadows extends RecyclerView.ItemDecoration {
 
@@ -32,49 +30,106 @@ import static net.aquadc.fiftyshades.ViewDrawablePool.usedMarkFor;
     private final RectSpec rect;
     private final ShadowSpec shadow;
     private final Paint paint = new Paint();
-    private final SparseArray<Shadow> drawables = new SparseArray<>();
-    private final ArrayList<Shadow> scrap = new ArrayList<>(0);
+    private final ViewDrawablePool<Shadow> drawables;
+    // inner shadow of a combined decoration, animated with DECOR_INNER_SHADOW_* properties
+    private final ShadowSpec innerShadow;
+    private final ViewDrawablePool<Shadow> innerDrawables;
 
     public RectItemsWithShadows(@NonNull RectSpec rect, @NonNull ShadowSpec shadow) {
         this(rect, shadow, false);
     }
     public RectItemsWithShadows(@NonNull RectSpec rect, @NonNull ShadowSpec shadow, boolean inner) {
+        this(rect, shadow, inner, null);
+    }
+    /**
+     * Constructs a decoration which draws both shadows in a single traversal:
+     * outer shadows below all items, and inner ones between fill and stroke.
+     * Outer shadow is animated with DECOR_SHADOW_* properties, and inner one with DECOR_INNER_SHADOW_* ones.
+     */
+    public RectItemsWithShadows(@NonNull RectSpec rect, @NonNull ShadowSpec outerShadow, @NonNull ShadowSpec innerShadow) {
+        this(rect, outerShadow, false, innerShadow);
+    }
+    private RectItemsWithShadows(RectSpec rect, ShadowSpec shadow, boolean inner, ShadowSpec innerShadow) {
         this.factory = new Shadow.ShadowState(0, new ShadowSpec(), inner);
+        this.drawables = new ViewDrawablePool<>(factory);
         this.rect = rect;
         this.shadow = shadow;
+        this.innerShadow = innerShadow;
+        this.innerDrawables = innerShadow == null ? null :
+            new ViewDrawablePool<Shadow>(new Shadow.ShadowState(0, new ShadowSpec(), true));
+    }
+
+    private ShadowMesh mesh;
+    /**
+     * Enables or disables batched mode: outer shadows of all items are drawn as a single triangle mesh
+     * with a Gaussian falloff approximated by per-vertex alpha.
+     * This saves hundreds of draw calls in dense grids at the cost of slightly less precise blur.
+     * Has no effect on inner shadows, and on hardware-accelerated canvases before API 29
+     * which don't support {@link Canvas#drawVertices}.
+     */
+    public RectItemsWithShadows batched(boolean batched) {
+        mesh = batched ? (mesh == null ? new ShadowMesh() : mesh) : null;
+        return this;
+    }
+    public boolean batched() {
+        return mesh != null;
     }
 
     // DRAWING
 
     private final RectF bounds = new RectF(); // drawRoundRect(l, t, r, b, …) is 21+, we use drawRoundRect(bounds, …)
     @Override public void onDraw(@NonNull Canvas c, @NonNull RecyclerView parent, @NonNull RecyclerView.State state) {
+        // record each item once and replay it while scrolling
+        boolean nodes = Build.VERSION.SDK_INT >= 29 && c.isHardwareAccelerated();
+        boolean metrics = ShadowMetrics.enabled;
+        long start = metrics ? ShadowMetrics.begin(ShadowMetrics.ITEM_DECORATION) : 0L;
+        if (Build.VERSION.SDK_INT >= 14) ItemDamage.drawn(parent); // further changes need invalidation again
 
         // prepare all the drawables
-        normalize(parent);
+        normalize(parent, nodes);
 
         // first pass: draw outer shadows, they could overlap each other but must not overlap fill or stroke
-        if (!factory.inner) drawOuter(c, parent);
+        if (!factory.inner) drawOuter(c, parent, nodes);
 
         // second pass: draw fill, inner shadow, and stroke
-        drawRemaining(c, parent);
+        drawRemaining(c, parent, nodes);
+        if (metrics) ShadowMetrics.end(ShadowMetrics.ITEM_DECORATION, start, parent.getChildCount());
     }
 
-    private void normalize(RecyclerView parent) {
-        long usedDrawables = 0;
+    private void normalize(RecyclerView parent, boolean nodes) {
+        ViewDrawablePool<Shadow> innerDrawables = this.innerDrawables;
+        drawables.newGeneration();
+        if (innerDrawables != null) innerDrawables.newGeneration();
         for (int i = 0, children = parent.getChildCount(); i < children; i++) {
             View v = parent.getChildAt(i);
 
             ShadowSpec viewShadow = (ShadowSpec) v.getTag(R.id.fiftyShades_decorShadowSpec);
-            if (viewShadow != null) fix(viewShadow);
+            if (viewShadow != null) fix(viewShadow, shadow);
 
             RectSpec viewRect = (RectSpec) v.getTag(R.id.fiftyShades_decorRectSpec);
             if (viewRect != null) fix(viewRect);
 
-            usedDrawables |= usedMarkFor(drawables, v);
+            drawables.mark(v);
+            if (innerDrawables != null) {
+                ShadowSpec viewInnerShadow = (ShadowSpec) v.getTag(R.id.fiftyShades_decorInnerShadowSpec);
+                if (viewInnerShadow != null) fix(viewInnerShadow, innerShadow);
+                innerDrawables.mark(v);
+            }
+        }
+        drawables.scrapUnused();
+        if (innerDrawables != null) innerDrawables.scrapUnused();
+
+        if (nodes) for (int i = 0, children = parent.getChildCount(); i < children; i++) {
+            View v = parent.getChildAt(i);
+            drawables.drawableFor(v);
+            Nodes n = (Nodes) drawables.extra(v);
+            if (n == null) drawables.extra(v, n = new Nodes());
+            n.validate(v, rectSpecOf(v), shadowSpecOf(v), innerDrawables == null ? null : innerShadowSpecOf(v));
         }
-        scrapUnused(drawables, scrap, usedDrawables);
     }
-    private void drawOuter(Canvas c, RecyclerView parent) {
+    private void drawOuter(Canvas c, RecyclerView parent, boolean nodes) {
+        ShadowMesh mesh = this.mesh;
+        if (mesh != null && c.isHardwareAccelerated() && Build.VERSION.SDK_INT < 29) mesh = null;
         for (int i = 0, children = parent.getChildCount(); i < children; i++) {
             View v = parent.getChildAt(i);
             ShadowSpec viewShadow = shadowSpecOf(v);
@@ -82,8 +137,24 @@ import static net.aquadc.fiftyshades.ViewDrawablePool.usedMarkFor;
             // draw shadow below, if outer
             if (viewShadow.isVisible() && // outer 0-shadow is visible only below transparent shape:
                     !((viewRect = rectSpecOf(v)).isOpaque() && viewShadow.isZero())) {
+                if (mesh != null) {
+                    mesh.add(c, v, viewRect.cornerRadius, viewShadow);
+                    continue;
+                }
+                if (viewShadow.equals(shadow) && viewRect.cornerRadius == rect.cornerRadius && drawPatch(c, v))
+                    continue; // items at rest with default appearance share a single bitmap
                 bounds.set(0, 0, v.getWidth(), v.getHeight());
-                Shadow drawable = unsafeDrawableFor(drawables, scrap, factory, v);
+                Shadow drawable = drawables.drawableFor(v);
+                if (nodes) {
+                    RenderNode node = ((Nodes) drawables.extra(v)).below;
+                    if (!node.hasDisplayList()) {
+                        try { drawShadow(node.beginRecording(v.getWidth(), v.getHeight()), drawable, viewRect.cornerRadius, viewShadow, 255); }
+                        finally { node.endRecording(); }
+                    }
+                    Nodes.place(node, v);
+                    c.drawRenderNode(node);
+                    continue;
+                }
                 c.save();
                 c.translate(v.getLeft(), v.getTop());
                 c.concat(v.getMatrix());
@@ -91,28 +162,62 @@ import static net.aquadc.fiftyshades.ViewDrawablePool.usedMarkFor;
                 c.restore();
             }
         }
+        if (mesh != null) mesh.draw(c);
     }
-    private void drawRemaining(Canvas c, RecyclerView parent) {
+    private NinePatch patch;
+    private Rect patchPaddings;
+    private final Rect patchBounds = new Rect(); // there's no draw(Canvas, RectF, Paint)
+    private final Paint patchPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private boolean drawPatch(Canvas c, View v) {
+        if (shadow.spread != 0f) return false; // patches don't know about spread
+        NinePatch patch = this.patch;
+        if (patch == null)
+            this.patch = patch = RectWithShadow.createShadowPatch(rect.cornerRadius, shadow, patchPaddings = shadow.inferPaddings());
+        Rect pad = patchPaddings;
+        int width = v.getWidth(), height = v.getHeight();
+        if (width + pad.left + pad.right < patch.getWidth() || height + pad.top + pad.bottom < patch.getHeight())
+            return false; // can't squeeze corners, fall back to the dynamic shadow
+
+        patchBounds.set(-pad.left, -pad.top, width + pad.right, height + pad.bottom);
+        patchPaint.setColor(multiplyAlpha(shadow.color, v.getAlpha())); // ALPHA_8 patch is tinted with paint colour
+        c.save();
+        c.translate(v.getLeft(), v.getTop());
+        c.concat(v.getMatrix());
+        patch.draw(c, patchBounds, patchPaint);
+        c.restore();
+        return true;
+    }
+
+    private void drawRemaining(Canvas c, RecyclerView parent, boolean nodes) {
         for (int i = 0, children = parent.getChildCount(); i < children; i++) {
             View v = parent.getChildAt(i);
             RectSpec viewRect = rectSpecOf(v);
-            ShadowSpec inShadow = null;
-            if (factory.inner) {
-                inShadow = shadowSpecOf(v);
-                if (!inShadow.isVisible() || inShadow.isZero()) inShadow = null;
-            }
+            ShadowSpec inShadow = factory.inner ? shadowSpecOf(v) : innerDrawables != null ? innerShadowSpecOf(v) : null;
+            if (inShadow != null && (!inShadow.isVisible() || inShadow.isZero())) inShadow = null;
             if (viewRect.hasFill() || inShadow != null || viewRect.hasStroke()) {
-                drawRemainingForView(c, v, viewRect, inShadow);
+                if (nodes) drawRemainingNode(c, v, viewRect, inShadow);
+                else drawRemainingForView(c, v, viewRect, inShadow);
             }
         }
     }
+    @RequiresApi(29) private void drawRemainingNode(Canvas c, View v, RectSpec viewRect, ShadowSpec inShadow) {
+        RenderNode node = ((Nodes) drawables.extra(v)).above;
+        if (!node.hasDisplayList()) {
+            try { drawRemainingForView(node.beginRecording(v.getWidth(), v.getHeight()), v, viewRect, inShadow, 1f); }
+            finally { node.endRecording(); }
+        }
+        Nodes.place(node, v);
+        c.drawRenderNode(node);
+    }
     private void drawRemainingForView(Canvas c, View v, RectSpec viewRect, ShadowSpec inShadow) {
-        bounds.set(0, 0, v.getWidth(), v.getHeight());
-        float alpha = v.getAlpha();
-
         c.save();
         c.translate(v.getLeft(), v.getTop());
         c.concat(v.getMatrix());
+        drawRemainingForView(c, v, viewRect, inShadow, v.getAlpha());
+        c.restore();
+    }
+    private void drawRemainingForView(Canvas c, View v, RectSpec viewRect, ShadowSpec inShadow, float alpha) {
+        bounds.set(0, 0, v.getWidth(), v.getHeight());
 
         paint.setAntiAlias(viewRect.cornerRadius > 0);
         if (viewRect.hasFill())
@@ -120,15 +225,13 @@ import static net.aquadc.fiftyshades.ViewDrawablePool.usedMarkFor;
 
         // draw shadow above, if inner
         if (inShadow != null) {
-            Shadow drawable = unsafeDrawableFor(drawables, scrap, factory, v);
+            Shadow drawable = (innerDrawables == null ? drawables : innerDrawables).drawableFor(v);
             drawShadow(c, drawable, viewRect.cornerRadius, inShadow, (int) (alpha * 255));
         }
 
         // draw stroke above inner shadow
         if (viewRect.hasStroke())
             stroke(c, alpha, viewRect.strokeColor, viewRect.strokeWidth, viewRect.cornerRadius);
-
-        c.restore();
     }
 
     private void fill(Canvas c, float alpha, int color, int cornerRadius) {
@@ -158,6 +261,55 @@ import static net.aquadc.fiftyshades.ViewDrawablePool.usedMarkFor;
         ShadowSpec viewShadow = (ShadowSpec) v.getTag(R.id.fiftyShades_decorShadowSpec);
         return viewShadow == null ? shadow : viewShadow;
     }
+    private ShadowSpec innerShadowSpecOf(View v) {
+        ShadowSpec viewShadow = (ShadowSpec) v.getTag(R.id.fiftyShades_decorInnerShadowSpec);
+        return viewShadow == null ? innerShadow : viewShadow;
+    }
+
+    /**
+     * Display lists of an item, recorded at full opacity in item coordinates.
+     * Position, transformation, and alpha are node properties which don't require re-recording.
+     */
+    @RequiresApi(29) private static final class Nodes {
+        final RenderNode below = new RenderNode("RectItemsWithShadows.below");
+        final RenderNode above = new RenderNode("RectItemsWithShadows.above");
+        private int width, height;
+        private final RectSpec rect = new RectSpec(0, 0);
+        private final ShadowSpec shadow = new ShadowSpec(), innerShadow = new ShadowSpec();
+        Nodes() {
+            for (RenderNode node : new RenderNode[] { below, above }) {
+                node.setClipToBounds(false); // shadows are out of bounds
+                node.setHasOverlappingRendering(false); // apply alpha to each op like direct drawing does
+            }
+        }
+        void validate(View v, RectSpec rect, ShadowSpec shadow, ShadowSpec innerShadow) {
+            int width = v.getWidth(), height = v.getHeight();
+            if (innerShadow != null && this.innerShadow.setFrom(innerShadow) != 0) {
+                above.discardDisplayList(); // outer shadow is still fine
+            }
+            if (width != this.width || height != this.height || !rect.equals(this.rect) || !shadow.equals(this.shadow)) {
+                this.width = width;
+                this.height = height;
+                this.rect.fillColor = rect.fillColor;
+                this.rect.cornerRadius = rect.cornerRadius;
+                this.rect.strokeColor = rect.strokeColor;
+                this.rect.strokeWidth = rect.strokeWidth;
+                this.shadow.dx = shadow.dx;
+                this.shadow.dy = shadow.dy;
+                this.shadow.radius = shadow.radius;
+                this.shadow.spread = shadow.spread;
+                this.shadow.color = shadow.color;
+                below.discardDisplayList();
+                above.discardDisplayList();
+            }
+        }
+        static void place(RenderNode node, View v) {
+            node.setPosition(v.getLeft(), v.getTop(), v.getRight(), v.getBottom());
+            Matrix matrix = v.getMatrix();
+            node.setAnimationMatrix(matrix.isIdentity() ? null : matrix);
+            node.setAlpha(v.getAlpha());
+        }
+    }
 
     // ANIMATION
 
@@ -173,18 +325,20 @@ import static net.aquadc.fiftyshades.ViewDrawablePool.usedMarkFor;
                 default: throw new AssertionError();
             }
         } else {
-            ShadowSpec shadow = (ShadowSpec) view.getTag(R.id.fiftyShades_decorShadowSpec);
+            ShadowSpec shadow = (ShadowSpec) view.getTag(at < 9 ? R.id.fiftyShades_decorShadowSpec : R.id.fiftyShades_decorInnerShadowSpec);
             if (shadow == null) return 0;
-            switch (at) {
+            switch (at < 9 ? at : at - 5) {
                 case 4: return floatToRawIntBits(shadow.dx);
                 case 5: return floatToRawIntBits(shadow.dy);
                 case 6: return floatToRawIntBits(shadow.radius);
                 case 7: return shadow.color;
+                case 8: return floatToRawIntBits(shadow.spread);
                 default: throw new AssertionError();
             }
         }
     }
     static void set_(View view, int at, int value) {
+        ItemDamage.beforeChange(view, at);
         if (at < 4) {
             RectSpec rect = (RectSpec) view.getTag(R.id.fiftyShades_decorRectSpec);
             if (rect == null) view.setTag(R.id.fiftyShades_decorRectSpec, rect = invalidRectSpec());
@@ -196,18 +350,19 @@ import static net.aquadc.fiftyshades.ViewDrawablePool.usedMarkFor;
                 default: throw new AssertionError();
             }
         } else {
-            ShadowSpec shadow = (ShadowSpec) view.getTag(R.id.fiftyShades_decorShadowSpec);
-            if (shadow == null) view.setTag(R.id.fiftyShades_decorShadowSpec, shadow = invalidShadowSpec());
-            switch (at) {
+            int tag = at < 9 ? R.id.fiftyShades_decorShadowSpec : R.id.fiftyShades_decorInnerShadowSpec;
+            ShadowSpec shadow = (ShadowSpec) view.getTag(tag);
+            if (shadow == null) view.setTag(tag, shadow = invalidShadowSpec());
+            switch (at < 9 ? at : at - 5) {
                 case 4: shadow.dx = intBitsToFloat(value); break;
                 case 5: shadow.dy = intBitsToFloat(value); break;
                 case 6: shadow.radius = intBitsToFloat(value); break;
                 case 7: shadow.color = value; break;
+                case 8: shadow.spread = intBitsToFloat(value); break;
                 default: throw new AssertionError();
             }
         }
-        View parent = (View) view.getParent();
-        if (parent != null) parent.invalidate();
+        ItemDamage.afterChange(view, at); // coalesced with other changes until the next draw
         // invalidateItemDecorations would invalidate offsets and relayout, we don't need this
     }
     private static RectSpec invalidRectSpec() {
@@ -221,12 +376,14 @@ import static net.aquadc.fiftyshades.ViewDrawablePool.usedMarkFor;
         shadow.dx = Float.NaN;
         shadow.dy = Float.NaN;
         shadow.radius = Float.NaN;
+        shadow.spread = Float.NaN;
         return shadow;
     } // And here comes that 'later' when we default to common values.
-    private void fix(ShadowSpec sh) {
+    private static void fix(ShadowSpec sh, ShadowSpec shadow) {
         if (Float.isNaN(sh.dx)) sh.dx = shadow.dx;
         if (Float.isNaN(sh.dy)) sh.dy = shadow.dy;
         if (Float.isNaN(sh.radius)) sh.radius = shadow.radius;
+        if (Float.isNaN(sh.spread)) sh.spread = shadow.spread;
         if (sh.color == 1) sh.color = shadow.color;
     }
     private void fix(RectSpec r) {
@@ -244,6 +401,13 @@ import static net.aquadc.fiftyshades.ViewDrawablePool.usedMarkFor;
     @RequiresApi(14) public static final Property<View, Float> DECOR_SHADOW_DY = floatProp(5, "itemShadowDy");
     @RequiresApi(14) public static final Property<View, Float> DECOR_SHADOW_RADIUS = floatProp(6, "itemShadowRadius");
     @RequiresApi(14) public static final Property<View, Integer> DECOR_SHADOW_COLOR = intProp(7, "itemShadowColor");
+    @RequiresApi(14) public static final Property<View, Float> DECOR_SHADOW_SPREAD = floatProp(8, "itemShadowSpread");
+    // inner shadow of a decoration having both
+    @RequiresApi(14) public static final Property<View, Float> DECOR_INNER_SHADOW_DX = floatProp(9, "itemInnerShadowDx");
+    @RequiresApi(14) public static final Property<View, Float> DECOR_INNER_SHADOW_DY = floatProp(10, "itemInnerShadowDy");
+    @RequiresApi(14) public static final Property<View, Float> DECOR_INNER_SHADOW_RADIUS = floatProp(11, "itemInnerShadowRadius");
+    @RequiresApi(14) public static final Property<View, Integer> DECOR_INNER_SHADOW_COLOR = intProp(12, "itemInnerShadowColor");
+    @RequiresApi(14) public static final Property<View, Float> DECOR_INNER_SHADOW_SPREAD = floatProp(13, "itemInnerShadowSpread");
 
     private static Property<View, Integer> intProp(int index, String name) {
         if (Build.VERSION.SDK_INT >= 24) return new IntProp24(index, name);
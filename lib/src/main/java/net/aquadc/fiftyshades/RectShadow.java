@@ -1,14 +1,10 @@
 package net.aquadc.fiftyshades;
 
-import static net.aquadc.fiftyshades.Numbers.ceil;
-import static net.aquadc.fiftyshades.Numbers.multiplyAlpha;
-
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.LinearGradient;
 import android.graphics.Paint;
-import android.graphics.RadialGradient;
 import android.graphics.Rect;
+import android.graphics.RectF;
 import android.graphics.Shader;
 import androidx.annotation.ColorInt;
 import androidx.annotation.NonNull;
@@ -24,16 +20,16 @@ import static java.lang.Math.round;
 public final class RectShadow extends Shadow {
 
     RectShadow(ShadowState state) {
-        super(state, Paint.DITHER_FLAG);
+        super(state, Paint.DITHER_FLAG | Paint.FILTER_BITMAP_FLAG);
     }
     public RectShadow() {
         this(0, new ShadowSpec());
     }
     public RectShadow(@Px int cornerRadius, @NonNull ShadowSpec shadow) {
-        super(cornerRadius, new ShadowSpec(shadow), false, Paint.DITHER_FLAG);
+        super(cornerRadius, new ShadowSpec(shadow), false, Paint.DITHER_FLAG | Paint.FILTER_BITMAP_FLAG);
     }
     public RectShadow(@Px int cornerRadius, @Px float dx, @Px float dy, @Px float radius, @ColorInt int color) {
-        super(cornerRadius, new ShadowSpec(dx, dy, radius, color), false, Paint.DITHER_FLAG);
+        super(cornerRadius, new ShadowSpec(dx, dy, radius, color), false, Paint.DITHER_FLAG | Paint.FILTER_BITMAP_FLAG);
     }
 
     // setters
@@ -43,110 +39,107 @@ public final class RectShadow extends Shadow {
     public RectShadow shadowDx(@Px float dx) { return (RectShadow) super.shadowDx(dx); }
     public RectShadow shadowDy(@Px float dy) { return (RectShadow) super.shadowDy(dy); }
     public RectShadow shadowRadius(@Px float radius) { return (RectShadow) super.shadowRadius(radius); }
+    public RectShadow shadowSpread(@Px float spread) { return (RectShadow) super.shadowSpread(spread); }
     @Override public RectShadow shadow(@NonNull ShadowSpec shadow) { return (RectShadow) super.shadow(shadow); }
+    @Override public RectShadow backend(@NonNull ShadowBackend backend) { return (RectShadow) super.backend(backend); }
 
     // invalidation
 
     @Override public void setBounds(int left, int top, int right, int bottom) {
-        int corners = boundedCornerRadius();
-        float gradi = cornerGradientRadiusInside();
+        int spread = spread();
+        int corners = boundedCornerRadius(spread);
+        float gradi = cornerGradientRadiusInside(spread);
         super.setBounds(left, top, right, bottom);
-        if (corners != boundedCornerRadius() || gradi != cornerGradientRadiusInside())
+        if (corners != boundedCornerRadius(spread) || gradi != cornerGradientRadiusInside(spread))
             radiusInvalidated();
     }
 
     @Override void radiusInvalidated() { paint.setShader(cornerShader = null); }
-    @Override void shadowRadiusInvalidated() { radiusInvalidated(); shadowInvalidated(); }
-    @Override void shadowColorInvalidated() { shadowInvalidated(); }
-    private void shadowInvalidated() { paint.setShader(cornerShader = edgeShader = null); }
+    @Override void shadowRadiusInvalidated() { radiusInvalidated(); }
+    @Override void shadowColorInvalidated() { } // gradients are colourless, tinted by paint colour
 
     // drawing
 
-    private final int[] linearColors = new int[5];
-    private final int[] radialColors = new int[5];
-    private final float[] radialPositions = { Float.NaN, Float.NaN, Float.NaN, Float.NaN, 1f /* radius */ };
-    private Shader cornerShader, edgeShader;
+    private Shader cornerShader;
     @Override public void draw(@NonNull Canvas canvas) {
         if (Color.alpha(state.shadow.color) == 0) return;
+        boolean metrics = ShadowMetrics.enabled;
+        long start = metrics ? ShadowMetrics.begin(ShadowMetrics.RECT_SHADOW) : 0L;
 
         Rect bounds = getBounds();
         int width = bounds.width();
         int height = bounds.height();
-
+        if (width > 0 && height > 0 && drawPlatform(canvas)) {
+            if (metrics) ShadowMetrics.end(ShadowMetrics.RECT_SHADOW, start, 1);
+            return;
+        }
+
+        // spread grows the shape dropping shadow, in CSS manner
+        int spread = spread();
+        width += 2 * spread;
+        height += 2 * spread;
         canvas.save();
         canvas.translate(
-            round((width < 0 ? bounds.centerX() : bounds.left) + state.shadow.dx),
-            round((height < 0 ? bounds.centerY() : bounds.top) + state.shadow.dy)
+            round((width < 0 ? bounds.centerX() : bounds.left - spread) + state.shadow.dx),
+            round((height < 0 ? bounds.centerY() : bounds.top - spread) + state.shadow.dy)
         ); //             ^^^ guard against drawing ugly shadow when we're squeezed. This looks quite possible in InsetDrawable
         if (width < 0) width = 0;
         if (height < 0) height = 0;
 
-        int cornerRadius = boundedCornerRadius();
+        int cornerRadius = boundedCornerRadius(spread);
 
         float shRad = state.shadow.radius * GaussianInterpolator.GAUSSIAN_FADE_AWAY;
         float shRadHalf = shRad / 2f;
 
         // Shadow middle is located exactly on the edge;
         // it strengthens to the inside and weakens to the outside.
-        float gradientRadiusInside = cornerGradientRadiusInside();
+        float gradientRadiusInside = cornerGradientRadiusInside(spread);
         float gradientRadius = gradientRadiusInside + shRadHalf;
-        if (cornerShader == null && shRad > 0) buildCornerShader(cornerRadius, shRad, gradientRadius);
+        if (cornerShader == null && shRad > 0) buildCornerShader(shRad, gradientRadius);
         int inset = max(0, round(gradientRadiusInside) - cornerRadius); // move corner gradients inside when blur radius is big
         drawCorners(canvas, cornerRadius, width, height, inset, gradientRadius);
-        if (edgeShader == null && shRad > 0) buildEdgeShader(shRadHalf);
-        drawEdges(canvas, width, height, cornerRadius, inset, shRadHalf, gradientRadius);
+        drawEdges(canvas, width, height, cornerRadius, inset, shRadHalf);
         canvas.restore();
+        if (metrics) ShadowMetrics.end(ShadowMetrics.RECT_SHADOW, start, 1);
     }
 
-    private float cornerGradientRadiusInside() {
-        return min(maxCornerRadius(), max(state.cornerRadius, state.shadow.radius * GaussianInterpolator.GAUSSIAN_FADE_AWAY / 2f));
+    private float cornerGradientRadiusInside(int spread) {
+        return min(
+            maxCornerRadius(spread),
+            max(max(0, state.cornerRadius + spread), state.shadow.radius * GaussianInterpolator.GAUSSIAN_FADE_AWAY / 2f)
+        );
     }
 
-    private void buildCornerShader(int cornerRadius, float shRad, float gradientRadius) {
-        int shCol = state.shadow.color;
-        radialColors[0] = shCol;
-        radialColors[1] = multiplyAlpha(shCol, THREE_QUARTERS_MULTIPLIER);
-        radialColors[2] = multiplyAlpha(shCol, MID_MULTIPLIER);
-        radialColors[3] = multiplyAlpha(shCol, QUARTER_MULTIPLIER);
-        radialColors[4] = 0xFFFFFF & shCol;
-
-        // fixme: when squeezed, radialPositions = [0f, 0f, ...], corners look a bit ugly
-        radialPositions[0] = max(0, gradientRadius - shRad) / gradientRadius; // shadow begins at shRad inside the shape, not at the edge!
-        radialPositions[1] = max(0, gradientRadius - .75f * shRad) / gradientRadius;
-        radialPositions[2] = max(0, gradientRadius - .5f * shRad) / gradientRadius;
-        radialPositions[3] = max(0, gradientRadius - .25f * shRad) / gradientRadius;
-
-        cornerShader =
-                new RadialGradient(cornerRadius, cornerRadius, gradientRadius, radialColors, radialPositions, Shader.TileMode.CLAMP);
+    private void buildCornerShader(float shRad, float gradientRadius) {
+        // fixme: when squeezed, gradient starts at the center, corners look a bit ugly
+        cornerShader = ShaderCache.corner(false, shRad / gradientRadius, gradientRadius);
     }
     private void drawCorners(Canvas canvas, int cornerRadius, int width, int height, int inset, float gRad) {
-        paint.setColor(state.shadow.color);
+        paint.setColor(paintColor());
         paint.setShader(cornerShader);
         int cornerDiameter = cornerRadius + cornerRadius;
-        int gRadInt = ceil(gRad);
         // top left:
         canvas.translate(inset, inset);
-        drawCorner(canvas, cornerRadius, gRad, cornerRadius - gRadInt, cornerRadius - gRadInt, cornerRadius, cornerRadius);
+        drawCorner(canvas, cornerRadius, -gRad, -gRad);
         // top right:
         canvas.translate(width - cornerDiameter - inset - inset, 0f);
-        drawCorner(canvas, cornerRadius, gRad, cornerRadius, cornerRadius - gRadInt, cornerRadius + gRadInt, cornerRadius);
+        drawCorner(canvas, cornerRadius, gRad, -gRad);
         // bottom right:
         canvas.translate(0f, height - cornerDiameter - inset - inset);
-        drawCorner(canvas, cornerRadius, gRad, cornerRadius, cornerRadius, cornerRadius + gRadInt, cornerRadius + gRadInt);
+        drawCorner(canvas, cornerRadius, gRad, gRad);
         // bottom left:
         canvas.translate(-width + cornerDiameter + inset + inset, 0f);
-        drawCorner(canvas, cornerRadius, gRad, cornerRadius - gRadInt, cornerRadius, cornerRadius, cornerRadius + gRadInt);
+        drawCorner(canvas, cornerRadius, -gRad, gRad);
         // restore
         canvas.translate(-inset, -height + cornerDiameter + inset);
     }
-    private void drawCorner(
-        Canvas canvas, int cornerRadius, float gradientRadius,
-        int clipL, int clipT, int clipR, int clipB
-    ) {
+    private static final RectF UNIT_CIRCLE = new RectF(-1f, -1f, 1f, 1f);
+    private void drawCorner(Canvas canvas, int cornerRadius, float scaleX, float scaleY) {
+        // unit-space quadrant is scaled to actual size and mirrored, a quarter of circle needs no clipping
         canvas.save();
-        canvas.clipRect(clipL, clipT, clipR, clipB);
-//        canvas.drawColor(0x40_000000); // visualize clip rects
-        canvas.drawCircle(cornerRadius, cornerRadius, gradientRadius, paint);
+        canvas.translate(cornerRadius, cornerRadius);
+        canvas.scale(scaleX, scaleY);
+        canvas.drawArc(UNIT_CIRCLE, 0f, 90f, true, paint);
         canvas.restore();
     }
 
@@ -185,35 +178,39 @@ public final class RectShadow extends Shadow {
      *    └───────────┘
      */
 
-    private void buildEdgeShader(float shRadHalf) {
-        int shCol = state.shadow.color;
-        linearColors[0] = 0xFFFFFF & shCol;
-        linearColors[1] = multiplyAlpha(shCol, QUARTER_MULTIPLIER);
-        linearColors[2] = multiplyAlpha(shCol, MID_MULTIPLIER);
-        linearColors[3] = multiplyAlpha(shCol, THREE_QUARTERS_MULTIPLIER);
-        linearColors[4] = shCol;
-        edgeShader = new LinearGradient(0f, -shRadHalf, 0f, shRadHalf, linearColors, null, Shader.TileMode.CLAMP);
-    }
-    private void drawEdges(Canvas canvas, int width, int height, int cornerRadius, int inset, float shRadHalf, float gradientRadius) {
-        paint.setColor(state.shadow.color); // shader may be null if shadowRadius == 0
-        paint.setShader(edgeShader);
+    private void drawEdges(Canvas canvas, int width, int height, int cornerRadius, int inset, float shRadHalf) {
+        paint.setColor(paintColor()); // tints the ramp, or fills solid edges if shadowRadius == 0
+        paint.setShader(shRadHalf > 0 ? Ramp.vertical() : null);
 //        paint.setColor(0x40_000000); // visualize painting area
 //        paint.setShader(null);
         int start = cornerRadius + inset;
         int lenH = width - cornerRadius - inset;
         boolean wide = width > height;
-        float innerH = wide ? height / 2f : gradientRadius - shRadHalf;
-        canvas.drawRect(start, -shRadHalf, lenH, innerH, paint);
+        // edges meet exactly where perpendicular ones start, any gap or overlap would be visible
+        float innerH = wide ? height / 2f : start;
+        drawEdge(canvas, start, lenH, innerH, shRadHalf);
         float angle = wide ? -90f : 90f;
         float halfMinSize = min(width, height) / 2f;
         canvas.rotate(angle, halfMinSize, halfMinSize);
         int lenV = height - cornerRadius - inset;
-        float innerV = wide ? gradientRadius - shRadHalf : width / 2f;
-        canvas.drawRect(start, -shRadHalf, lenV, innerV, paint);
+        float innerV = wide ? start : width / 2f;
+        drawEdge(canvas, start, lenV, innerV, shRadHalf);
         float halfMaxSize = max(width, height) / 2f;
         canvas.rotate(angle, halfMaxSize, halfMaxSize);
-        canvas.drawRect(start, -shRadHalf, lenH, innerH, paint);
+        drawEdge(canvas, start, lenH, innerH, shRadHalf);
         canvas.rotate(angle, halfMinSize, halfMinSize);
-        canvas.drawRect(start, -shRadHalf, lenV, innerV, paint);
+        drawEdge(canvas, start, lenV, innerV, shRadHalf);
+    }
+    private void drawEdge(Canvas canvas, float left, float right, float bottom, float shRadHalf) {
+        if (shRadHalf > 0) { // fit [-shRadHalf; +shRadHalf] into ramp's [0; 1]
+            float scale = shRadHalf + shRadHalf;
+            canvas.translate(0f, -shRadHalf);
+            canvas.scale(1f, scale);
+            canvas.drawRect(left, 0f, right, (bottom + shRadHalf) / scale, paint);
+            canvas.scale(1f, 1f / scale);
+            canvas.translate(0f, shRadHalf);
+        } else {
+            canvas.drawRect(left, 0f, right, bottom, paint);
+        }
     }
 }
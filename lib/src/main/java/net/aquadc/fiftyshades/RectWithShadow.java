@@ -1,5 +1,6 @@
 package net.aquadc.fiftyshades;
 
+import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
@@ -7,14 +8,22 @@ import android.graphics.NinePatch;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.RectF;
+import android.os.Build;
 import android.graphics.drawable.Drawable;
+import android.graphics.drawable.InsetDrawable;
 import android.graphics.drawable.NinePatchDrawable;
 import androidx.annotation.ColorInt;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.Px;
+import androidx.annotation.RequiresApi;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.concurrent.Executor;
 
 import static java.lang.Math.max;
+import static java.lang.Math.round;
 import static net.aquadc.fiftyshades.Numbers.ceil;
 
 /**
@@ -57,10 +66,9 @@ public final class RectWithShadow {
         @NonNull CornerSet corners
     ) {
         if (paddings == null) paddings = shadow.inferPaddings();
-        int corner = max(rect.cornerRadius, ceil(rect.strokeWidth));
         return new NinePatch(
             bitmap(bgColor, rect, shadow, paddings, corners),
-            corners.chunk(paddings, corner, corner, shadow, bgColor, rect.fillColor),
+            chunk(bgColor, rect, shadow, paddings, corners),
             null
         );
     }
@@ -85,14 +93,177 @@ public final class RectWithShadow {
         @NonNull ShadowSpec shadow,
         @Nullable Rect paddings,
         @NonNull CornerSet corners
+    ) {
+        if (paddings == null) paddings = shadow.inferPaddings();
+        if (corners == CornerSet.ALL && shadow.dx == 0f && shadow.dy == 0f &&
+            paddings.left == paddings.right && paddings.top == paddings.bottom) { // quadrants are mirror images
+            int corner = max(rect.cornerRadius, ceil(rect.strokeWidth));
+            return new QuadrantDrawable(createQuadrant(bgColor, rect, shadow, paddings), paddings, // same size as inset patch
+                corners.measureWidth(paddings, corner, shadow) - paddings.left - paddings.right,
+                corners.measureHeight(paddings, corner, shadow) - paddings.top - paddings.bottom);
+        }
+        return corners.inset(
+            new PatchDrawable(createPatch(bgColor, rect, shadow, paddings, corners)),
+            paddings
+        );
+    }
+
+    /**
+     * Create a drawable like {@link #createDrawable(PatchCache, Resources, int, RectSpec, ShadowSpec, Rect, CornerSet)}
+     * without blocking the caller. A patch which is not cached yet is rendered on the executor.
+     * Meanwhile, the drawable draws a flat shape without shadow,
+     * and invalidates itself on the main thread when the patch is ready.
+     * If rendering fails, e.g. runs out of memory, the drawable stays flat.
+     * Concurrent requests of the same appearance are rendered once.
+     * @throws IllegalArgumentException if paddings are way too negative
+     */
+    @RequiresApi(14) @NonNull public static Drawable createDrawableAsync(
+        @NonNull PatchCache cache,
+        @Nullable Resources res,
+        @NonNull Executor executor,
+        @NonNull PatchSpec spec
+    ) {
+        checkPaddings(spec.paddings, max(spec.rect.cornerRadius, ceil(spec.rect.strokeWidth)), spec.rect);
+        AsyncPatchDrawable async = new AsyncPatchDrawable(spec);
+        NinePatch patch = cache.getAsync(res, executor, spec, async);
+        return spec.corners.inset(patch == null ? async : new NinePatchDrawable(res, patch), spec.paddings);
+    }
+
+    /**
+     * Render patches of the given appearances on the executor and put them into the cache,
+     * e.g. during app startup. Pass an executor with several threads to render them in parallel.
+     * Patches which are already cached or being rendered are skipped.
+     * @throws IllegalArgumentException if paddings of any spec are way too negative
+     */
+    @RequiresApi(14) public static void prewarm(
+        @NonNull PatchCache cache,
+        @Nullable Resources res,
+        @NonNull Executor executor,
+        @NonNull Collection<PatchSpec> specs
+    ) {
+        for (PatchSpec spec : specs) {
+            checkPaddings(spec.paddings, max(spec.rect.cornerRadius, ceil(spec.rect.strokeWidth)), spec.rect);
+            cache.getAsync(res, executor, spec, null);
+        }
+    }
+
+    /**
+     * Give the bitmap of a drawable
+     * from {@link #createDrawable(int, RectSpec, ShadowSpec, Rect, CornerSet)}
+     * to {@link BitmapPool#shared()}, so subsequent patches could reuse it.
+     * Neither the drawable nor its copies may be drawn afterwards.
+     * Other drawables, including ones backed by {@link PatchCache}, are ignored because their bitmaps are shared.
+     */
+    @RequiresApi(19) public static void release(@NonNull Drawable drawable) {
+        if (drawable instanceof InsetDrawable) drawable = ((InsetDrawable) drawable).getDrawable();
+        Bitmap bitmap = null;
+        if (drawable instanceof PatchDrawable) {
+            PatchDrawable patch = (PatchDrawable) drawable;
+            bitmap = patch.bitmap;
+            patch.bitmap = null;
+        } else if (drawable instanceof QuadrantDrawable) {
+            bitmap = ((QuadrantDrawable) drawable).release();
+        }
+        if (bitmap != null) BitmapPool.shared().put(bitmap);
+    }
+    /** A drawable which owns its bitmap. */
+    private static final class PatchDrawable extends NinePatchDrawable {
+        Bitmap bitmap;
+        PatchDrawable(NinePatch patch) {
+            super(null, patch);
+            bitmap = patch.getBitmap();
+        }
+    }
+
+    /**
+     * Get a 9-patch containing a round rect with shadow from the cache, rendering and caching it if absent.
+     * @param cache         where to look for and put the patch, e.g. {@link PatchCache#shared()}
+     * @param res           resources to take density from, or null to leave patch density unspecified
+     * @return a 9-patch shared with other users of the same cache, don't mutate it
+     * @see #createPatch(int, RectSpec, ShadowSpec, Rect, CornerSet)
+     */
+    @RequiresApi(14) @NonNull public static NinePatch createPatch(
+        @NonNull PatchCache cache,
+        @Nullable Resources res,
+        @ColorInt int bgColor,
+        @NonNull RectSpec rect,
+        @NonNull ShadowSpec shadow,
+        @Nullable Rect paddings,
+        @NonNull CornerSet corners
+    ) {
+        if (paddings == null) paddings = shadow.inferPaddings();
+        return cache.get(res, bgColor, rect, shadow, paddings, corners);
+    }
+
+    /**
+     * Create a drawable containing a stretchable shape
+     * from {@link #createPatch(PatchCache, Resources, int, RectSpec, ShadowSpec, Rect, CornerSet)}
+     * with negative insets to draw shadow out of bounds.
+     */
+    @RequiresApi(14) @NonNull public static Drawable createDrawable(
+        @NonNull PatchCache cache,
+        @Nullable Resources res,
+        @ColorInt int bgColor,
+        @NonNull RectSpec rect,
+        @NonNull ShadowSpec shadow,
+        @Nullable Rect paddings,
+        @NonNull CornerSet corners
     ) {
         if (paddings == null) paddings = shadow.inferPaddings();
         return corners.inset(
-            new NinePatchDrawable(null, createPatch(bgColor, rect, shadow, paddings, corners)),
+            new NinePatchDrawable(res, cache.get(res, bgColor, rect, shadow, paddings, corners)),
             paddings
         );
     }
 
+    /**
+     * Create an ALPHA_8 9-patch containing only a solid shadow of a round rect, without fill or stroke.
+     * The patch is colourless: draw it with a paint of shadow colour.
+     */
+    @NonNull static NinePatch createShadowPatch(@Px int cornerRadius, @NonNull ShadowSpec shadow, @NonNull Rect paddings) {
+        return new NinePatch(
+            bitmap(Color.TRANSPARENT, new RectSpec(Color.BLACK, cornerRadius), shadow, paddings, CornerSet.ALL, true),
+            shadowChunk(cornerRadius, shadow, paddings),
+            null
+        );
+    }
+
+    /** Create 9-patch chunk for {@link #createPatch(int, RectSpec, ShadowSpec, Rect, CornerSet)}. */
+    @NonNull static byte[] chunk(
+        @ColorInt int bgColor, @NonNull RectSpec rect, @NonNull ShadowSpec shadow, @NonNull Rect paddings, @NonNull CornerSet corners
+    ) {
+        int corner = max(rect.cornerRadius, ceil(rect.strokeWidth));
+        return corners.chunk(paddings, corner, corner, shadow, bgColor, rect.fillColor);
+    }
+    /** Create 9-patch chunk for {@link #createShadowPatch(int, ShadowSpec, Rect)}. */
+    @NonNull static byte[] shadowChunk(@Px int cornerRadius, @NonNull ShadowSpec shadow, @NonNull Rect paddings) {
+        return CornerSet.ALL.chunk(paddings, cornerRadius, cornerRadius, shadow, 1, 1); // 1 is NO_COLOR
+    }
+
+    /**
+     * Create the top left quadrant of a 9-patch from {@link #createPatch(int, RectSpec, ShadowSpec, Rect, CornerSet)}
+     * with {@link CornerSet#ALL}, which is enough to draw the rest by mirroring
+     * when shadow has no offset and paddings are symmetric.
+     * The last column and the last row are stretchable, their intersection is the middle.
+     */
+    @NonNull static Bitmap createQuadrant(
+        @ColorInt int bgColor, @NonNull RectSpec rect, @NonNull ShadowSpec shadow, @NonNull Rect paddings
+    ) {
+        boolean metrics = ShadowMetrics.enabled;
+        long start = metrics ? ShadowMetrics.begin(ShadowMetrics.PATCH) : 0L;
+        int corner = max(rect.cornerRadius, ceil(rect.strokeWidth));
+        checkPaddings(paddings, corner, rect);
+
+        int blur = ceil(shadow.radius);
+        int width = paddings.left + corner + blur + 1, height = paddings.top + corner + blur + 1;
+        // the smallest whole shape, centered on the last pixel
+        RectF shape = new RectF(paddings.left, paddings.top, width + corner + blur, height + corner + blur);
+        // blur of the stretchable pixels depends on the shape behind them
+        Bitmap bitmap = render(width, height, width + 2 * blur + 2, height + 2 * blur + 2, bgColor, rect, shape, shadow);
+        if (metrics) ShadowMetrics.end(ShadowMetrics.PATCH, start, 1);
+        return bitmap;
+    }
+
     // -----------------------------------------------------------------------------------------------------------------
 
     private static Bitmap bitmap(
@@ -102,34 +273,126 @@ public final class RectWithShadow {
         @NonNull Rect paddings,
         @NonNull CornerSet corners
     ) {
+        return bitmap(bgColor, rect, shadow, paddings, corners, false);
+    }
+    private static Bitmap bitmap(
+        @ColorInt int bgColor,
+        @NonNull RectSpec rect,
+        @NonNull ShadowSpec shadow,
+        @NonNull Rect paddings,
+        @NonNull CornerSet corners,
+        boolean shadowOnly
+    ) {
+        boolean metrics = ShadowMetrics.enabled;
+        long start = metrics ? ShadowMetrics.begin(ShadowMetrics.PATCH) : 0L;
         int cornerRadius = rect.cornerRadius;
         int corner = max(cornerRadius, ceil(rect.strokeWidth));
+        checkPaddings(paddings, corner, rect);
+
+        int width = corners.measureWidth(paddings, corner, shadow), height = corners.measureHeight(paddings, corner, shadow);
+        RectF shape = corners.layout(paddings, corner, corner, shadow);
+        Bitmap bitmap = shadowOnly
+            ? gradientMask(width, height, shape, cornerRadius, shadow) // colourless, tinted while drawing
+            : render(width, height, width, height, bgColor, rect, shape, shadow);
+        if (metrics) ShadowMetrics.end(ShadowMetrics.PATCH, start, 1);
+        return bitmap;
+    }
+    private static void checkPaddings(Rect paddings, int corner, RectSpec rect) {
         if (paddings.left < -corner || paddings.top < -corner || paddings.right < -corner || paddings.bottom < -corner)
             throw new IllegalArgumentException(
-                "negative paddings (" + paddings.flattenToString() + ") are eating corners (" + cornerRadius +
+                "negative paddings (" + paddings.flattenToString() + ") are eating corners (" + rect.cornerRadius +
                     ") or stroke (" + rect.strokeWidth + ')');
-
-        Bitmap bitmap = Bitmap.createBitmap(
-            corners.measureWidth(paddings, corner, shadow),
-            corners.measureHeight(paddings, corner, shadow),
-            Bitmap.Config.ARGB_8888);
+    }
+    private static Bitmap render(
+        int width, int height, int maskWidth, int maskHeight,
+        @ColorInt int bgColor, RectSpec rect, RectF shape, ShadowSpec shadow
+    ) {
+        // opaque background leaves nothing to blend, thus no alpha channel is needed,
+        // but padding area, drawn out of bounds, must still match the background exactly
+        boolean compact = is565(bgColor);
+        Bitmap bitmap = obtain(width, height, compact ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        if (compact) paint.setDither(true); // against banding of shadow gradient
 
         if (bgColor != Color.TRANSPARENT) bitmap.eraseColor(bgColor);
         // I could check for (bgColor >>> 24 != 0) but I assume you have really good reason to redraw transparent pixels
 
-        RectF shape = corners.layout(paddings, corner, corner, shadow);
         final Canvas canvas = new Canvas(bitmap);
-
-        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        int cornerRadius = rect.cornerRadius;
+        if (shadow.isVisible())
+            drawShadow(canvas, maskWidth, maskHeight, paint, shape, cornerRadius, shadow, rect.fillColor);
         paint.setColor(rect.fillColor);
-        paint.setShadowLayer(shadow.radius, shadow.dx, shadow.dy, shadow.color);
         drawRR(canvas, shape, cornerRadius, cornerRadius, paint);
         if (rect.hasStroke())
             andDrawStroke(canvas, paint, rect.strokeColor, rect.strokeWidth, shape, cornerRadius, cornerRadius);
         return bitmap;
     }
+    /** Whether the colour is opaque and survives conversion to RGB_565 and back. */
+    private static boolean is565(int color) {
+        return (color >>> 24) == 0xFF && is5(color >>> 16) && is6(color >>> 8) && is5(color);
+    }
+    private static boolean is5(int channel) {
+        channel &= 0xFF;
+        int q = channel >>> 3;
+        return ((q << 3) | (q >>> 2)) == channel;
+    }
+    private static boolean is6(int channel) {
+        channel &= 0xFF;
+        int q = channel >>> 2;
+        return ((q << 2) | (q >>> 4)) == channel;
+    }
+    private static void drawShadow(
+        Canvas canvas, int maskWidth, int maskHeight, Paint paint, RectF shape, int cornerRadius, ShadowSpec shadow, int fillColor
+    ) {
+        // Paint#setShadowLayer used to do this for us, but it is slow and its blur differs between Android versions
+        Bitmap mask = mask(maskWidth, maskHeight, paint, shape, cornerRadius, shadow);
+
+        // ShadowLayer semantics: opaque shadow colour takes alpha from the paint
+        int color = shadow.color;
+        paint.setColor((color >>> 24) == 0xFF ? (fillColor & 0xFF000000) | (color & 0xFFFFFF) : color);
+        canvas.drawBitmap(mask, 0f, 0f, paint); // ALPHA_8 is tinted with paint colour
+        if (Build.VERSION.SDK_INT >= 19) BitmapPool.shared().put(mask);
+        else mask.recycle();
+    }
+    /** Renders blurred shadow of the shape into an ALPHA_8 bitmap. */
+    private static Bitmap mask(int width, int height, Paint paint, RectF shape, int cornerRadius, ShadowSpec shadow) {
+        Bitmap mask = obtain(width, height, Bitmap.Config.ALPHA_8);
+        Canvas maskCanvas = new Canvas(mask);
+        maskCanvas.translate(shadow.dx, shadow.dy);
+        paint.setColor(Color.BLACK);
+        drawRR(maskCanvas, shape, cornerRadius, cornerRadius, paint);
+
+        float sigma = BoxBlur.sigma(shadow.radius);
+        if (sigma > 0f) {
+            int stride = mask.getRowBytes();
+            byte[] alpha = new byte[stride * height];
+            ByteBuffer buffer = ByteBuffer.wrap(alpha);
+            mask.copyPixelsToBuffer(buffer);
+            BoxBlur.blur(alpha, width, height, stride, sigma);
+            buffer.rewind();
+            mask.copyPixelsFromBuffer(buffer);
+        }
+        return mask;
+    }
+    /**
+     * Renders shadow of the shape into an ALPHA_8 bitmap with the gradients of {@link RectShadow},
+     * so a patch doesn't pop when replaced with a dynamic shadow, or vice versa.
+     */
+    private static Bitmap gradientMask(int width, int height, RectF shape, int cornerRadius, ShadowSpec shadow) {
+        Bitmap mask = obtain(width, height, Bitmap.Config.ALPHA_8);
+        RectShadow drawable = new RectShadow(cornerRadius, new ShadowSpec(shadow.dx, shadow.dy, shadow.radius, Color.BLACK))
+            .backend(ShadowBackend.GRADIENTS);
+        drawable.setBounds(round(shape.left), round(shape.top), round(shape.right), round(shape.bottom));
+        drawable.draw(new Canvas(mask));
+        return mask;
+    }
+    /** Takes a transparent bitmap from the shared pool, if available on this API level. */
+    private static Bitmap obtain(int width, int height, Bitmap.Config config) {
+        return Build.VERSION.SDK_INT >= 19
+            ? BitmapPool.shared().get(width, height, config)
+            : Bitmap.createBitmap(width, height, config);
+    }
     private static void andDrawStroke(Canvas canvas, Paint paint, int color, float width, RectF bounds, int rx, int ry) {
-        paint.setShadowLayer(0f, 0f, 0f, 0);
         paint.setColor(color);
         paint.setStyle(Paint.Style.STROKE);
         paint.setStrokeWidth(width);
@@ -0,0 +1,127 @@
+package net.aquadc.fiftyshades;
+
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.NinePatch;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import static net.aquadc.fiftyshades.Numbers.multiplyAlpha;
+
+/**
+ * A round rect with shadow, like {@link RectWithShadow#createDrawable(RectSpec, ShadowSpec)},
+ * but the shadow is an ALPHA_8 9-patch tinted while drawing, and the shape is drawn as vectors on top.
+ * This takes a quarter of memory, and colours can be changed without rendering a new patch.
+ * Like an inset drawable from {@link RectWithShadow}, it draws shadow out of bounds.
+ */
+public final class RectWithShadowMask extends Drawable {
+
+    private final NinePatch mask;
+    private final Rect paddings;
+    private final RectSpec rect;
+    @ColorInt private int shadowColor;
+    private final Paint maskPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Rect patchBounds = new Rect();
+    private final RectF shape = new RectF();
+    private int alpha = 0xFF;
+
+    /**
+     * Renders a new mask.
+     */
+    public RectWithShadowMask(@NonNull RectSpec rect, @NonNull ShadowSpec shadow) {
+        this(rect, shadow, shadow.inferPaddings(), null);
+    }
+
+    /**
+     * Takes a mask from the cache, rendering and caching it if absent. Masks are shared by shadows of any colour.
+     */
+    @RequiresApi(14) public RectWithShadowMask(@NonNull PatchCache cache, @NonNull RectSpec rect, @NonNull ShadowSpec shadow) {
+        this(rect, shadow, shadow.inferPaddings(), cache);
+    }
+
+    private RectWithShadowMask(RectSpec rect, ShadowSpec shadow, Rect paddings, PatchCache cache) {
+        this.mask = cache == null
+            ? RectWithShadow.createShadowPatch(rect.cornerRadius, shadow, paddings)
+            : cache.getMask(rect.cornerRadius, shadow, paddings);
+        this.paddings = paddings;
+        this.rect = new RectSpec(rect.fillColor, rect.cornerRadius, rect.strokeColor, rect.strokeWidth);
+        this.shadowColor = shadow.color;
+    }
+
+    @ColorInt public int shadowColor() { return shadowColor; }
+    @ColorInt public int fillColor() { return rect.fillColor; }
+    @ColorInt public int strokeColor() { return rect.strokeColor; }
+
+    public RectWithShadowMask shadowColor(@ColorInt int color) {
+        if (shadowColor != color) {
+            shadowColor = color;
+            invalidateSelf();
+        }
+        return this;
+    }
+    public RectWithShadowMask fillColor(@ColorInt int color) {
+        if (rect.fillColor != color) {
+            rect.fillColor = color;
+            invalidateSelf();
+        }
+        return this;
+    }
+    public RectWithShadowMask strokeColor(@ColorInt int color) {
+        if (rect.strokeColor != color) {
+            rect.strokeColor = color;
+            invalidateSelf();
+        }
+        return this;
+    }
+
+    @Override public void draw(@NonNull Canvas canvas) {
+        Rect bounds = getBounds();
+        float alpha = this.alpha / 255f;
+        if ((shadowColor >>> 24) != 0) {
+            Rect pad = paddings;
+            patchBounds.set(bounds.left - pad.left, bounds.top - pad.top, bounds.right + pad.right, bounds.bottom + pad.bottom);
+            maskPaint.setColor(multiplyAlpha(shadowColor, alpha));
+            mask.draw(canvas, patchBounds, maskPaint);
+        }
+        int cornerRadius = rect.cornerRadius;
+        shape.set(bounds);
+        if (rect.hasFill()) {
+            paint.setStyle(Paint.Style.FILL);
+            paint.setColor(multiplyAlpha(rect.fillColor, alpha));
+            canvas.drawRoundRect(shape, cornerRadius, cornerRadius, paint);
+        }
+        if (rect.hasStroke()) {
+            paint.setStyle(Paint.Style.STROKE);
+            paint.setStrokeWidth(rect.strokeWidth);
+            paint.setColor(multiplyAlpha(rect.strokeColor, alpha));
+            canvas.drawRoundRect(shape, cornerRadius, cornerRadius, paint);
+        }
+    }
+
+    @Override public int getAlpha() { return alpha; }
+    @Override public void setAlpha(int alpha) {
+        if (this.alpha != alpha) {
+            this.alpha = alpha;
+            invalidateSelf();
+        }
+    }
+
+    @Nullable @Override public ColorFilter getColorFilter() { return paint.getColorFilter(); }
+    @Override public void setColorFilter(@Nullable ColorFilter colorFilter) {
+        maskPaint.setColorFilter(colorFilter);
+        paint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+}
@@ -0,0 +1,138 @@
+package net.aquadc.fiftyshades;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Matrix;
+import android.graphics.Shader;
+
+import java.nio.ByteBuffer;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.round;
+
+/**
+ * Process-wide cache of corner gradients shared by all {@link RectShadow}s and {@link RectInnerShadow}s.
+ * Gradients are defined in unit space and scaled to actual corner size while drawing,
+ * thus their shape depends only on blur width relative to gradient radius.
+ * This ratio is quantized on a logarithmic scale, so shadows of nearly equal proportions share the same gradients,
+ * and animating shadow radius, corner radius, or drawable size doesn't allocate anything once the cache is warm.
+ * Texture size follows corner size in power-of-two buckets, so big corners are not stretched from small textures.
+ * Gradients are colourless ALPHA_8 textures tinted with paint colour,
+ * so shadow colour and alpha animations never touch this cache.
+ */
+public final class ShaderCache {
+    private ShaderCache() {}
+
+    /** Blur width relative to gradient radius lies within [0; MAX_RATIO]. */
+    private static final float MAX_RATIO = 2f;
+    /** Texture sides, in pixels. Corner gradients are smooth, thus bilinear filtering upscales them well within a bucket. */
+    static final int MIN_SIZE = 16, MAX_SIZE = 256;
+    private static final int BUCKETS = 5; // 16, 32, 64, 128, 256
+    /** Smallest non-zero ratio. Thinner blur is narrower than a texel even in the biggest texture. */
+    private static final float MIN_RATIO = 1f / MAX_SIZE;
+
+    private static float quantum = 1 / 32f;
+    private static long hits, misses;
+    private static Shader[][] outers = newTables(), inners = newTables();
+
+    /**
+     * Sets relative quantization step of gradient shapes, i.e. of blur width divided by corner gradient radius.
+     * Ratios differing by about this fraction share a gradient.
+     * Bigger steps give more sharing but less precise boundary between solid and blurred parts of corners.
+     * @param step quantization step, within (0; 2]
+     */
+    public static synchronized void quantum(float step) {
+        if (!(step > 0f && step <= MAX_RATIO))
+            throw new IllegalArgumentException("step must be within (0; " + MAX_RATIO + "], got " + step);
+        if (quantum != step) {
+            quantum = step;
+            clearTables();
+        }
+    }
+    public static synchronized float quantum() { return quantum; }
+
+    /** Returns the number of cached gradients. */
+    public static synchronized int size() {
+        return size(outers) + size(inners);
+    }
+    private static int size(Shader[][] tables) {
+        int size = 0;
+        for (Shader[] table : tables)
+            for (Shader shader : table)
+                if (shader != null) size++;
+        return size;
+    }
+
+    /** Returns the number of times a drawable got its shader from cache. */
+    public static synchronized long hitCount() { return hits; }
+    /** Returns the number of times a drawable had to build its shader. */
+    public static synchronized long missCount() { return misses; }
+    /** Returns hits/(hits+misses), or NaN if cache was never queried. */
+    public static synchronized float hitRatio() { return (float) hits / (hits + misses); }
+
+    /** Drops all shaders and resets counters. */
+    public static synchronized void clear() {
+        clearTables();
+        hits = misses = 0;
+    }
+    private static void clearTables() {
+        outers = newTables();
+        inners = newTables();
+    }
+    private static Shader[][] newTables() {
+        // index 0 is reserved for sharp corners, others go geometrically from MIN_RATIO to MAX_RATIO
+        int length = 2 + (int) Math.ceil(Math.log(MAX_RATIO / MIN_RATIO) / Math.log1p(quantum));
+        Shader[][] tables = new Shader[BUCKETS][];
+        for (int i = 0; i < BUCKETS; i++) tables[i] = new Shader[length];
+        return tables;
+    }
+
+    // internal
+
+    /**
+     * Returns a quadrant of radial gradient centered at (0, 0) with radius of 1, spanning [0; 1]² and clamped outside.
+     * Mirror it with negative canvas scale to draw other quadrants.
+     * @param inner  whether gradient is for an inner shadow, i.e. becomes more opaque towards the edge
+     * @param ratio  blur width divided by gradient radius
+     * @param radius gradient radius in pixels, chooses texture size
+     */
+    static synchronized Shader corner(boolean inner, float ratio, float radius) {
+        int size = MIN_SIZE, bucket = 0;
+        while (size < radius && size < MAX_SIZE) {
+            size <<= 1;
+            bucket++;
+        }
+        Shader[] table = (inner ? inners : outers)[bucket];
+        int index = ratio > 0f // never round a non-zero ratio down to a sharp corner
+            ? 1 + round((float) (Math.log(min(max(ratio, MIN_RATIO), MAX_RATIO) / MIN_RATIO) / Math.log1p(quantum)))
+            : 0;
+        Shader shader = table[index];
+        if (shader == null) {
+            misses++;
+            table[index] = shader = build(inner, index == 0 ? 0f : min(MAX_RATIO, MIN_RATIO * (float) Math.pow(1 + quantum, index - 1)), size);
+        } else {
+            hits++;
+        }
+        return shader;
+    }
+    private static Shader build(boolean inner, float ratio, int size) {
+        // blur begins at `ratio` inside the edge; squeezed outer shadows have ratio > 1 and start at the center
+        byte[] alpha = new byte[size * size];
+        for (int y = 0; y < size; y++)
+            for (int x = 0; x < size; x++) {
+                float dist = (float) Math.hypot((x + .5f) / size, (y + .5f) / size);
+                float t = ratio > 0f
+                    ? (inner ? dist - 1f + ratio : 1f - dist) / ratio // 0 at transparent end, 1 at opaque one
+                    : (inner ? dist >= 1f : dist < 1f) ? 1f : 0f;
+                alpha[y * size + x] = (byte) round(255 * Ramp.rise(max(0f, min(1f, t))));
+            }
+        Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ALPHA_8);
+        bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(alpha));
+        BitmapShader shader = new BitmapShader(bitmap, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+        Matrix matrix = new Matrix();
+        matrix.setScale(1f / size, 1f / size);
+        shader.setLocalMatrix(matrix);
+        return shader;
+    }
+}
@@ -1,5 +1,6 @@
 package net.aquadc.fiftyshades;
 
+import android.graphics.Canvas;
 import android.graphics.ColorFilter;
 import android.graphics.Paint;
 import android.graphics.PixelFormat;
@@ -17,13 +18,16 @@ import androidx.annotation.RequiresApi;
 
 import static java.lang.Math.max;
 import static java.lang.Math.min;
-import static net.aquadc.fiftyshades.GaussianInterpolator.GAUSSIAN;
+import static java.lang.Math.round;
+import static net.aquadc.fiftyshades.Numbers.multiplyAlpha;
 import static net.aquadc.fiftyshades.Numbers.requireNonNegative;
 
 
 public abstract class Shadow extends Drawable {
 
     ShadowState state;
+    /** Whether {@link #state} is not shared with other drawables, thus can be written in place. */
+    private boolean owned;
     final Paint paint;
     Shadow(@NonNull ShadowState state, int paintFlags) {
         this.state = state;
@@ -31,9 +35,19 @@ public abstract class Shadow extends Drawable {
     }
     Shadow(@Px int cornerRadius, @NonNull ShadowSpec shadow, boolean inner, int paintFlags) {
         this.state = new ShadowState(cornerRadius, shadow, inner);
+        owned = true;
         paint = new Paint(paintFlags);
     }
 
+    /** Returns state which can be written, copying it first if it may be shared. */
+    private ShadowState writable() {
+        if (!owned) {
+            state = new ShadowState(state);
+            owned = true;
+        }
+        return state;
+    }
+
     // int get-set
 
     public final int cornerRadius() { return state.cornerRadius; }
@@ -53,11 +67,11 @@ public abstract class Shadow extends Drawable {
         if (i(index) != value) {
             switch (index) {
                 case 0:
-                    state.cornerRadius = requireNonNegative(value, "cornerRadius");
+                    writable().cornerRadius = requireNonNegative(value, "cornerRadius");
                     radiusInvalidated();
                     break;
                 case 1:
-                    state.shadow.color = value;
+                    writable().shadow.color = value;
                     shadowColorInvalidated();
                     break;
                 default:
@@ -79,6 +93,9 @@ public abstract class Shadow extends Drawable {
     @Px public final float shadowRadius() { return state.shadow.radius; }
     @RequiresApi(14) public static final Property<Shadow, Float> SHADOW_RADIUS = floatProp(3, "shadowRadius");
 
+    @Px public final float shadowSpread() { return state.shadow.spread; }
+    @RequiresApi(14) public static final Property<Shadow, Float> SHADOW_SPREAD = floatProp(4, "shadowSpread");
+
     final float f(int index) {
         ShadowSpec shadow = state.shadow;
         switch (index) {
@@ -86,12 +103,13 @@ public abstract class Shadow extends Drawable {
             case 1: return shadow.dx;
             case 2: return shadow.dy;
             case 3: return shadow.radius;
+            case 4: return shadow.spread;
             default: throw new AssertionError();
         }
     }
     final Shadow f(int index, float value) {
-        ShadowSpec shadow = state.shadow;
         if (f(index) != value) {
+            ShadowSpec shadow = writable().shadow;
             switch (index) {
                 case 1:
                     shadow.dx(value);
@@ -105,6 +123,10 @@ public abstract class Shadow extends Drawable {
                     shadow.radius(value);
                     shadowRadiusInvalidated();
                     break;
+                case 4:
+                    shadow.spread(value);
+                    shadowSpreadInvalidated();
+                    break;
                 default: throw new AssertionError();
             }
             invalidateSelf();
@@ -117,31 +139,51 @@ public abstract class Shadow extends Drawable {
     public Shadow shadowDx(@Px float dx) { return f(1, dx); }
     public Shadow shadowDy(@Px float dy) { return f(2, dy); }
     public Shadow shadowRadius(@Px float radius) { return f(3, radius); }
+    public Shadow shadowSpread(@Px float spread) { return f(4, spread); }
     public Shadow shadow(@NonNull ShadowSpec shadow) {
-        int changes = state.shadow.setFrom(shadow);
-        if (changes == 0) return this;
+        if (state.shadow.equals(shadow)) return this;
+        int changes = writable().shadow.setFrom(shadow);
         if ((changes & 3) != 0) shadowOffsetInvalidated();
         if ((changes & 4) != 0) shadowRadiusInvalidated();
         if ((changes & 8) != 0) shadowColorInvalidated();
+        if ((changes & 16) != 0) shadowSpreadInvalidated();
         invalidateSelf();
         return this;
     }
 
+    /** Returns the backend requested for this drawable, {@link ShadowBackend#AUTO} by default. */
+    @NonNull public final ShadowBackend backend() { return state.backend; }
+    /** Overrides the way this drawable is rasterized. Unsupported backends fall back to gradients. */
+    public Shadow backend(@NonNull ShadowBackend backend) {
+        if (state.backend != backend) {
+            writable().backend = backend;
+            invalidateSelf();
+        }
+        return this;
+    }
+
     // invalidation
 
     abstract void radiusInvalidated();
     void shadowOffsetInvalidated() {}
     abstract void shadowRadiusInvalidated();
     abstract void shadowColorInvalidated();
+    void shadowSpreadInvalidated() { radiusInvalidated(); } // spread changes radius of the shape dropping shadow
 
     // drawing
 
-    static final float QUARTER_MULTIPLIER = GAUSSIAN.getInterpolation(.75f);
-    static final float MID_MULTIPLIER = GAUSSIAN.getInterpolation(.5f);
-    static final float THREE_QUARTERS_MULTIPLIER = GAUSSIAN.getInterpolation(.25f);
-
-    @Override public final int getAlpha() { return paint.getAlpha(); }
-    @Override public final void setAlpha(int alpha) { paint.setAlpha(alpha); }
+    private int alpha = 0xFF;
+    @Override public final int getAlpha() { return alpha; }
+    @Override public final void setAlpha(int alpha) {
+        if (this.alpha != alpha) {
+            this.alpha = alpha;
+            invalidateSelf();
+        }
+    }
+    /** Shadow colour with drawable alpha applied. Alpha of paint modulates shaders, thus gradients must be opaque. */
+    @ColorInt final int paintColor() {
+        return alpha == 0xFF ? state.shadow.color : multiplyAlpha(state.shadow.color, alpha / 255f);
+    }
 
     @Nullable @Override public final ColorFilter getColorFilter() { return paint.getColorFilter(); }
     @Override public final void setColorFilter(@Nullable ColorFilter colorFilter) { paint.setColorFilter(colorFilter); }
@@ -150,37 +192,88 @@ public abstract class Shadow extends Drawable {
         return PixelFormat.TRANSLUCENT;
     }
 
+    private PlatformBlur platform; // own one, when geometry differs from the one shared via state
+    /**
+     * Draws the shadow using a platform blur, if {@link #backend} resolves to one.
+     * @return false if gradients should be drawn instead
+     */
+    final boolean drawPlatform(Canvas canvas) {
+        ShadowState state = this.state;
+        ShadowBackend backend = ShadowBackend.resolve(state.backend, canvas, state.inner, state.shadow);
+        if (backend == ShadowBackend.GRADIENTS) return false;
+        Rect bounds = getBounds();
+        int cornerRadius = boundedCornerRadius();
+        PlatformBlur platform = state.platform;
+        if (platform == null) {
+            state.platform = platform = new PlatformBlur();
+        } else if (!owned && !platform.fits(bounds, cornerRadius, state.shadow)) {
+            if (this.platform == null) this.platform = new PlatformBlur();
+            platform = this.platform;
+        }
+        if (backend == ShadowBackend.RENDER_EFFECT && Build.VERSION.SDK_INT >= 31)
+            platform.drawEffect(canvas, bounds, cornerRadius, state.shadow, state.inner, paintColor(), paint.getColorFilter());
+        else
+            platform.drawMask(canvas, bounds, cornerRadius, state.shadow, state.inner, paintColor(), paint.getColorFilter());
+        return true;
+    }
+
     final int boundedCornerRadius() {
         // limit corners to size we can afford:
         return min(state.cornerRadius, maxCornerRadius());
     }
 
     final int maxCornerRadius() {
+        return maxCornerRadius(0);
+    }
+
+    /** Spread in whole pixels: bounds of the shape dropping shadow are outset by it. */
+    final int spread() {
+        return round(state.inner ? -state.shadow.spread : state.shadow.spread);
+    }
+    /** Corner radius of the shape dropping shadow, grown or shrunk by spread, like in CSS. */
+    final int boundedCornerRadius(int spread) {
+        return min(max(0, state.cornerRadius + spread), maxCornerRadius(spread));
+    }
+    final int maxCornerRadius(int spread) {
         Rect bounds = getBounds();
-        return min(max(0, bounds.width()), max(0, bounds.height())) / 2;
+        return min(max(0, bounds.width() + 2 * spread), max(0, bounds.height() + 2 * spread)) / 2;
     }
 
     // state
 
+    /**
+     * Returns state shared by drawables created from it, along with their render data, e.g. paths and render nodes.
+     * Drawables copy the state when they're changed, so changes never leak to other drawables.
+     */
     @Override public final ConstantState getConstantState() {
+        owned = false;
         return state;
     }
+    /** Does nothing: state is copied on write anyway. */
     @NonNull @Override public final Drawable mutate() {
-        ShadowSpec shadow = state.shadow;
-        state = new ShadowState(state.cornerRadius, new ShadowSpec(shadow), state.inner);
         return this;
     }
 
+    /** Copy-on-write state: written only by its owner, see {@link #writable()}. */
     static final class ShadowState extends ConstantState {
         int cornerRadius; // should this be fractional? TODO decide
         final ShadowSpec shadow;
         final boolean inner;
+        ShadowBackend backend = ShadowBackend.AUTO;
         // do we need CornerSet here? TODO decide
+
+        // render data, touched only while drawing on the main thread
+        PlatformBlur platform;
+
         ShadowState(int cornerRadius, ShadowSpec shadow, boolean inner) {
             this.cornerRadius = cornerRadius;
             this.shadow = shadow;
             this.inner = inner;
         }
+        ShadowState(ShadowState copyFrom) {
+            this(copyFrom.cornerRadius, new ShadowSpec(copyFrom.shadow), copyFrom.inner);
+            backend = copyFrom.backend;
+        }
         @NonNull @Override public Drawable newDrawable() {
             return inner ? new RectInnerShadow(this) : new RectShadow(this);
         }
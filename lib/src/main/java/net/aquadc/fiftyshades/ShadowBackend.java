@@ -0,0 +1,55 @@
+package net.aquadc.fiftyshades;
+
+import android.graphics.Canvas;
+import android.os.Build;
+
+/**
+ * The way a {@link Shadow} is rasterized.
+ * Unsupported backends fall back to {@link #GRADIENTS} silently.
+ */
+public enum ShadowBackend {
+    /**
+     * Picks the cheapest backend for current API level, canvas and shadow size.
+     * This is {@link #BLUR_MASK_FILTER} for outer shadows on hardware canvases since API 28,
+     * where the blur of a round rect is computed by GPU, and {@link #GRADIENTS} otherwise.
+     * Platform blurs are fitted to gradients, thus switching between backends barely changes the look.
+     */
+    AUTO,
+    /** Shaders approximating Gaussian blur. Works everywhere, costs 8 to 16 draw operations. */
+    GRADIENTS,
+    /**
+     * {@link android.graphics.BlurMaskFilter}, a single draw operation.
+     * Software canvases, or hardware ones since API 28.
+     * Inner shadows additionally require a clip path.
+     */
+    BLUR_MASK_FILTER,
+    /**
+     * {@link android.graphics.RenderEffect} blur of a {@link android.graphics.RenderNode}.
+     * Hardware canvases since API 31. Needs an offscreen layer, thus is never picked automatically.
+     */
+    RENDER_EFFECT,
+    ;
+
+    /** Mask filter blurs bigger than this are rendered into too large textures. */
+    private static final float MAX_AUTO_RADIUS = 128f;
+
+    /**
+     * Resolves the backend to use for the given request.
+     * @return {@link #GRADIENTS}, {@link #BLUR_MASK_FILTER}, or {@link #RENDER_EFFECT}
+     */
+    static ShadowBackend resolve(ShadowBackend requested, Canvas canvas, boolean inner, ShadowSpec shadow) {
+        switch (requested) {
+            case AUTO:
+                return !inner && shadow.radius > 0f && shadow.radius <= MAX_AUTO_RADIUS &&
+                    Build.VERSION.SDK_INT >= 28 && canvas.isHardwareAccelerated() ? BLUR_MASK_FILTER : GRADIENTS;
+            case BLUR_MASK_FILTER:
+                return shadow.radius > 0f &&
+                    (Build.VERSION.SDK_INT >= 28 || !canvas.isHardwareAccelerated()) ? BLUR_MASK_FILTER : GRADIENTS;
+            case RENDER_EFFECT:
+                return shadow.radius > 0f &&
+                    Build.VERSION.SDK_INT >= 31 && canvas.isHardwareAccelerated() ? RENDER_EFFECT : GRADIENTS;
+            default:
+                return GRADIENTS;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package net.aquadc.fiftyshades;
+
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.view.View;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static net.aquadc.fiftyshades.Numbers.multiplyAlpha;
+
+/**
+ * Accumulates outer shadows of round rects into a single triangle mesh drawn with one {@link Canvas#drawVertices} call.
+ * Gaussian falloff is approximated with per-vertex alpha of several concentric contours,
+ * like corner gradients approximate it with a few colour stops.
+ * Arrays are kept between frames, so a warm mesh doesn't allocate.
+ */
+final class ShadowMesh {
+
+    /** Contours between solid and transparent boundaries of a shadow, minus one. */
+    private static final int RINGS = 4;
+    /** Segments per quarter of a corner arc. */
+    private static final int SEGMENTS = 6;
+    private static final int POINTS = 4 * (SEGMENTS + 1);
+    /** Vertices and indices per shadow: solid fan around the center plus strips between contours. */
+    private static final int VERTICES = 1 + (RINGS + 1) * POINTS, INDICES = 3 * POINTS + 6 * RINGS * POINTS;
+    /** Indices are 16-bit. */
+    private static final int MAX_VERTICES = Short.MAX_VALUE + 1;
+    /** Shadows fitting into a single draw call. */
+    static final int MAX_SHADOWS = MAX_VERTICES / VERTICES;
+
+    private static final float[] COS = new float[POINTS], SIN = new float[POINTS];
+    private static final float[] RING_ALPHA = new float[RINGS + 1];
+    static {
+        // top-left, top-right, bottom-right, bottom-left corners, clockwise
+        for (int corner = 0, i = 0; corner < 4; corner++)
+            for (int s = 0; s <= SEGMENTS; s++, i++) {
+                double angle = Math.toRadians(180 + 90 * corner + 90.0 * s / SEGMENTS);
+                COS[i] = (float) Math.cos(angle);
+                SIN[i] = (float) Math.sin(angle);
+            }
+        for (int k = 0; k <= RINGS; k++)
+            RING_ALPHA[k] = Ramp.rise(1f - (float) k / RINGS);
+    }
+
+    private final Paint paint = new Paint();
+    private final Matrix matrix = new Matrix();
+    private float[] verts = new float[0];
+    private int[] colors = new int[0];
+    private short[] indices = new short[0];
+    private int vertexCount, indexCount;
+
+    /**
+     * Appends shadow of the given view, flushing first if the mesh would overflow.
+     */
+    void add(Canvas c, View v, int cornerRadius, ShadowSpec shadow) {
+        if (vertexCount + VERTICES > MAX_VERTICES) draw(c);
+        int base = vertexCount;
+        add(0f, 0f, v.getWidth(), v.getHeight(), cornerRadius, shadow, multiplyAlpha(shadow.color, v.getAlpha()));
+
+        // to parent coordinates, like translate(left, top) + concat(matrix)
+        matrix.set(v.getMatrix());
+        matrix.postTranslate(v.getLeft(), v.getTop());
+        matrix.mapPoints(verts, 2 * base, verts, 2 * base, VERTICES);
+    }
+
+    /**
+     * Appends shadow of a round rect with the given bounds. Caller must ensure there's room for it, see {@link #MAX_SHADOWS}.
+     */
+    void add(float left, float top, float right, float bottom, int cornerRadius, ShadowSpec shadow, int color) {
+        ensureCapacity(vertexCount + VERTICES, indexCount + INDICES);
+
+        float spread = shadow.spread;
+        float width = max(0f, right - left + 2 * spread), height = max(0f, bottom - top + 2 * spread);
+        float cr = min(max(0f, cornerRadius + spread), min(width, height) / 2f);
+        float half = shadow.radius * GaussianInterpolator.GAUSSIAN_FADE_AWAY / 2f;
+        float l = (left + right - width) / 2f + shadow.dx, t = (top + bottom - height) / 2f + shadow.dy, r = l + width, b = t + height;
+
+        // center
+        int base = vertexCount, vi = 2 * base;
+        verts[vi++] = (l + r) / 2f;
+        verts[vi++] = (t + b) / 2f;
+        colors[base] = color;
+
+        // contours from solid to transparent: shadow middle lies exactly on the edge
+        for (int k = 0; k <= RINGS; k++) {
+            float o = -half + 2 * half * k / RINGS;
+            float rad = max(0f, cr + o);
+            float cxL = l - o + rad, cxR = r + o - rad, cyT = t - o + rad, cyB = b + o - rad;
+            if (cxL > cxR) cxL = cxR = (cxL + cxR) / 2f; // squeezed, contour degenerates into a segment
+            if (cyT > cyB) cyT = cyB = (cyT + cyB) / 2f;
+            int ringColor = multiplyAlpha(color, RING_ALPHA[k]);
+            for (int i = 0; i < POINTS; i++) {
+                int corner = i / (SEGMENTS + 1);
+                verts[vi++] = (corner == 0 || corner == 3 ? cxL : cxR) + rad * COS[i];
+                verts[vi++] = (corner < 2 ? cyT : cyB) + rad * SIN[i];
+                colors[base + 1 + k * POINTS + i] = ringColor;
+            }
+        }
+
+        // solid fan
+        int ii = indexCount;
+        for (int i = 0; i < POINTS; i++) {
+            indices[ii++] = (short) base;
+            indices[ii++] = (short) (base + 1 + i);
+            indices[ii++] = (short) (base + 1 + (i + 1) % POINTS);
+        }
+        // strips between contours
+        for (int k = 0; k < RINGS; k++) {
+            int inner = base + 1 + k * POINTS, outer = inner + POINTS;
+            for (int i = 0; i < POINTS; i++) {
+                int next = (i + 1) % POINTS;
+                indices[ii++] = (short) (inner + i);
+                indices[ii++] = (short) (outer + i);
+                indices[ii++] = (short) (outer + next);
+                indices[ii++] = (short) (inner + i);
+                indices[ii++] = (short) (outer + next);
+                indices[ii++] = (short) (inner + next);
+            }
+        }
+
+        vertexCount += VERTICES;
+        indexCount = ii;
+    }
+
+    /**
+     * Draws accumulated shadows and empties the mesh.
+     */
+    void draw(Canvas c) {
+        replay(c);
+        clear();
+    }
+    /**
+     * Draws accumulated shadows keeping them, so an unchanged mesh could be drawn again.
+     */
+    void replay(Canvas c) {
+        if (indexCount == 0) return;
+        c.drawVertices(Canvas.VertexMode.TRIANGLES, 2 * vertexCount, verts, 0, null, 0, colors, 0, indices, 0, indexCount, paint);
+    }
+    void clear() {
+        vertexCount = indexCount = 0;
+    }
+    void colorFilter(ColorFilter filter) {
+        paint.setColorFilter(filter);
+    }
+
+    private void ensureCapacity(int vertices, int indices) {
+        if (colors.length < vertices) {
+            int size = max(vertices, min(MAX_VERTICES, 2 * colors.length));
+            float[] verts = new float[2 * size];
+            System.arraycopy(this.verts, 0, verts, 0, 2 * vertexCount);
+            this.verts = verts;
+            int[] colors = new int[size];
+            System.arraycopy(this.colors, 0, colors, 0, vertexCount);
+            this.colors = colors;
+        }
+        if (this.indices.length < indices) {
+            short[] idx = new short[max(indices, 2 * this.indices.length)];
+            System.arraycopy(this.indices, 0, idx, 0, indexCount);
+            this.indices = idx;
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+package net.aquadc.fiftyshades;
+
+import android.os.Build;
+import android.os.Trace;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Opt-in rendering metrics of all shadows in the process.
+ * While disabled, which is the default, instrumented code paths only check a static field.
+ * Enable them before drawing, preferably in {@link android.app.Application#onCreate()}.
+ */
+public final class ShadowMetrics {
+    private ShadowMetrics() {}
+
+    /** {@link RectShadow#draw} */
+    public static final int RECT_SHADOW = 0;
+    /** {@link RectInnerShadow#draw} */
+    public static final int RECT_INNER_SHADOW = 1;
+    /** {@link RectItemsWithShadows#onDraw}, including nested {@link #RECT_SHADOW} or {@link #RECT_INNER_SHADOW} draws */
+    public static final int ITEM_DECORATION = 2;
+    /** Patch generation by {@link RectWithShadow} */
+    public static final int PATCH = 3;
+    /** {@link MultiShadow#draw} */
+    public static final int MULTI_SHADOW = 4;
+    private static final int RENDERERS = 5;
+    private static final String[] SECTIONS = {
+        "FiftyShades:RectShadow", "FiftyShades:RectInnerShadow", "FiftyShades:RectItemsWithShadows", "FiftyShades:patch",
+        "FiftyShades:MultiShadow",
+    };
+
+    /** Histogram bucket i holds durations within [2^i; 2^(i+1)) nanoseconds. */
+    public static final int BUCKETS = 40;
+
+    /**
+     * Receives metrics as they appear, on the thread which was drawing.
+     */
+    public interface Listener {
+        /**
+         * Called after an operation has finished.
+         * @param renderer renderer constant, from {@link #RECT_SHADOW} to {@link #MULTI_SHADOW}
+         * @param nanos    time spent
+         * @param items    number of items drawn by decoration, layers drawn by {@link MultiShadow}, 1 otherwise
+         */
+        void onMeasured(int renderer, long nanos, int items);
+    }
+
+    static boolean enabled;
+    private static boolean trace;
+    private static Listener listener;
+    private static final long[] counts = new long[RENDERERS], nanos = new long[RENDERERS], items = new long[RENDERERS];
+    private static final long[][] histograms = new long[RENDERERS][BUCKETS];
+
+    /**
+     * Enables or disables measurements.
+     * @param trace whether to also emit {@link Trace} sections, API 18+
+     */
+    public static synchronized void enabled(boolean enabled, boolean trace) {
+        ShadowMetrics.trace = trace && Build.VERSION.SDK_INT >= 18;
+        ShadowMetrics.enabled = enabled;
+    }
+    public static boolean enabled() { return enabled; }
+
+    /**
+     * Sets a listener to be notified about every measurement.
+     */
+    public static synchronized void listener(@Nullable Listener listener) { ShadowMetrics.listener = listener; }
+
+    /** Returns the number of measured operations. */
+    public static synchronized long count(int renderer) { return counts[renderer]; }
+    /** Returns total time of measured operations. */
+    public static synchronized long nanos(int renderer) { return nanos[renderer]; }
+    /** Returns total number of items drawn. */
+    public static synchronized long items(int renderer) { return items[renderer]; }
+    /**
+     * Copies duration histogram into the given array.
+     * @return the given array of {@link #BUCKETS} length
+     */
+    @NonNull public static synchronized long[] histogram(int renderer, @NonNull long[] into) {
+        System.arraycopy(histograms[renderer], 0, into, 0, BUCKETS);
+        return into;
+    }
+    /** Returns the number of corner gradients built, i.e. {@link ShaderCache#missCount()}. */
+    public static long shaderBuildCount() { return ShaderCache.missCount(); }
+
+    /** Resets all counters and histograms. */
+    public static synchronized void reset() {
+        for (int r = 0; r < RENDERERS; r++) {
+            counts[r] = nanos[r] = items[r] = 0;
+            Arrays.fill(histograms[r], 0);
+        }
+    }
+
+    // internal
+
+    /** Starts a measurement. Call only if {@link #enabled}. */
+    static long begin(int renderer) {
+        if (trace && Build.VERSION.SDK_INT >= 18) Trace.beginSection(SECTIONS[renderer]);
+        return System.nanoTime();
+    }
+    /** Finishes a measurement started with {@link #begin(int)}. */
+    static void end(int renderer, long start, int drawn) {
+        long time = System.nanoTime() - start;
+        if (trace && Build.VERSION.SDK_INT >= 18) Trace.endSection();
+        Listener listener;
+        synchronized (ShadowMetrics.class) {
+            counts[renderer]++;
+            nanos[renderer] += time;
+            items[renderer] += drawn;
+            histograms[renderer][Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(Math.max(1L, time)))]++;
+            listener = ShadowMetrics.listener;
+        }
+        if (listener != null) listener.onMeasured(renderer, time, drawn);
+    }
+}
@@ -18,6 +18,7 @@ public final class ShadowSpec {
     @Px float dx;
     @Px float dy;
     @Px float radius;
+    @Px float spread;
     @ColorInt int color;
 
     /**
@@ -29,29 +30,47 @@ public final class ShadowSpec {
      * @throws IllegalArgumentException if any float is infinite or NaN, or radius is negative
      */
     public ShadowSpec(@Px float dx, @Px float dy, @Px float radius, @ColorInt int color) {
+        this(dx, dy, radius, 0f, color);
+    }
+
+    /**
+     * Constructs new shadow spec, like CSS box-shadow.
+     * Spread is applied by dynamic renderers ({@link RectShadow}, {@link RectInnerShadow}, {@link MultiShadow},
+     * {@link RectItemsWithShadows}) and ignored by 9-patches from {@link RectWithShadow}.
+     * @param dx     horizontal shadow offset
+     * @param dy     vertical shadow offset
+     * @param radius radius of shadow blur (non-negative)
+     * @param spread how much outer shadow grows or inner shadow shrinks its shape, negative values do the opposite
+     * @param color  colour of shadow
+     * @throws IllegalArgumentException if any float is infinite or NaN, or radius is negative
+     */
+    public ShadowSpec(@Px float dx, @Px float dy, @Px float radius, @Px float spread, @ColorInt int color) {
         dx(dx);
         dy(dy);
         radius(radius);
+        spread(spread);
         this.color = color;
     }
 
     ShadowSpec() {
     }
     ShadowSpec(ShadowSpec copyFrom) {
-        this(copyFrom.dx, copyFrom.dy, copyFrom.radius, copyFrom.color);
+        this(copyFrom.dx, copyFrom.dy, copyFrom.radius, copyFrom.spread, copyFrom.color);
     }
 
     @Px public float dx() { return dx; }
     @Px public float dy() { return dy; }
     @Px public float radius() { return radius; }
+    @Px public float spread() { return spread; }
     @ColorInt public int color() { return color; }
 
     boolean isVisible() { return (color >>> 24) != 0; }
-    boolean isZero() { return dx == 0f && dy == 0f && radius == 0f; }
+    boolean isZero() { return dx == 0f && dy == 0f && radius == 0f && spread == 0f; }
 
     void dx(float dx) { this.dx = requireFinite(dx, "dx"); }
     void dy(float dy) { this.dy = requireFinite(dy, "dy"); }
     void radius(float radius) { this.radius = requireNonNegative(radius, "radius"); }
+    void spread(float spread) { this.spread = requireFinite(spread, "spread"); }
     int setFrom(@NonNull ShadowSpec original) {
         int changes = 0;
         if (this.dx != original.dx) {
@@ -70,16 +89,24 @@ public final class ShadowSpec {
             this.color = original.color;
             changes |= 8;
         }
+        if (this.spread != original.spread) {
+            this.spread = original.spread;
+            changes |= 16;
+        }
         return changes;
     }
 
     @NonNull Rect inferPaddings() {
+        return inferPaddings(new Rect());
+    }
+    @NonNull Rect inferPaddings(@NonNull Rect into) {
         int l, t, r, b;
         l = t = r = b = ceil(radius);
         int d;
         if ((d = ceil(dx)) > 0) r += d; else l -= d;
         if ((d = ceil(dy)) > 0) b += d; else t -= d;
-        return new Rect(l, t, r, b);
+        into.set(l, t, r, b);
+        return into;
     }
 
     @Override public boolean equals(Object o) {
@@ -88,14 +115,16 @@ public final class ShadowSpec {
             color == (that = (ShadowSpec) o).color &&
             Float.compare(that.dx, dx) == 0 &&
             Float.compare(that.dy, dy) == 0 &&
-            Float.compare(that.radius, radius) == 0
+            Float.compare(that.radius, radius) == 0 &&
+            Float.compare(that.spread, spread) == 0
         );
     }
     @Override public int hashCode() {
-        return 31 * (31 * (31 *
+        return 31 * (31 * (31 * (31 *
             (dx != +0.0f ? Float.floatToIntBits(dx) : 0) +
             (dy != +0.0f ? Float.floatToIntBits(dy) : 0)) +
             (radius != +0.0f ? Float.floatToIntBits(radius) : 0)) +
+            (spread != +0.0f ? Float.floatToIntBits(spread) : 0)) +
             color;
     }
     @Override public String toString() {
@@ -103,6 +132,7 @@ public final class ShadowSpec {
             .append("dx").append('=').append(dx).append(", ")
             .append("dy").append('=').append(dy).append(", ")
             .append("radius").append('=').append(radius).append(", ")
+            .append("spread").append('=').append(spread).append(", ")
             .append("color").append('='), color)
             .append(')').toString();
     }
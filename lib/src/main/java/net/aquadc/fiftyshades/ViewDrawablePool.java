@@ -1,49 +1,140 @@
 package net.aquadc.fiftyshades;
 
 import android.graphics.drawable.Drawable;
-import android.util.SparseArray;
 import android.view.View;
 import androidx.annotation.RequiresApi;
 
 import java.util.ArrayList;
 
-@RequiresApi(11) final class ViewDrawablePool {
-    private ViewDrawablePool() {}
+/**
+ * Identity map of View:Drawable with linear probing.
+ * Each frame, visible views are stamped with current generation,
+ * and drawables of views which were not stamped go to the free list to serve new views.
+ */
+@RequiresApi(11) final class ViewDrawablePool<T extends Drawable> {
 
-    static long usedMarkFor(SparseArray<?> mappings, View v) {
-        int iof = mappings.indexOfKey(System.identityHashCode(v));
-        return iof >= 0 && iof < 64 ? 1L << iof : 0L; // on hash collision we'll just mark same index twice
-        // thus, popCount(usedDrawables) <= children
+    private final Drawable.ConstantState factory;
+    private View[] views = new View[16];
+    private Object[] drawables = new Object[16];
+    private Object[] extras = new Object[16];
+    private int[] stamps = new int[16];
+    private int size, generation;
+    private final ArrayList<T> scrap = new ArrayList<>(0);
+
+    ViewDrawablePool(Drawable.ConstantState factory) {
+        this.factory = factory;
+    }
+
+    /** Starts a new frame. Views not marked since then are considered gone. */
+    void newGeneration() {
+        generation++;
     }
 
-    static <T> void scrapUnused(SparseArray<? extends T> mapping, ArrayList<? super T> scrap, long used) {
-        int drwbls = mapping.size();
-        for (int index = Math.min(64, drwbls)-1; index >= 0; index--)
-            if ((used & (1L << index)) == 0)
-                scrapAt(mapping, scrap, index);
-        drwbls -= 64; // sorry fellow, I don't honestly believe that your users need to see >64 items
-        for (; drwbls > 0; drwbls--) // don't remember View:Shadow but still behave correctly
-            scrapAt(mapping, scrap, mapping.size() - 1); // and I don't mind repeated size() call here, deal with it
+    /** Marks the drawable of the given view as used in current frame, if any. */
+    void mark(View v) {
+        int index = indexOf(v);
+        if (views[index] != null) stamps[index] = generation;
     }
-    private static <T> void scrapAt(SparseArray<? extends T> mapping, ArrayList<? super T> scrap, int index) {
-        scrap.add(mapping.valueAt(index));
-        mapping.removeAt(index);
+
+    /** Moves drawables of views which were not marked in current frame to the free list. */
+    void scrapUnused() {
+        View[] views = this.views;
+        for (int i = 0; i < views.length; i++) {
+            while (views[i] != null && stamps[i] != generation) { // removal shifts another entry here, check it too
+                //noinspection unchecked
+                scrap.add((T) drawables[i]);
+                removeAt(i);
+            }
+        }
     }
 
-    static <T extends Drawable> T unsafeDrawableFor(
-        SparseArray<T> drawables, ArrayList<? extends T> scrap, Drawable.ConstantState factory, View v
-    ) {
-        int key = System.identityHashCode(v);
-        T drawable = drawables.get(key); // when hashes collide, we just reuse the drawable (badly but correctly)
+    /** Returns the drawable of the given view, reusing a scrapped one or creating a new one if necessary. */
+    T drawableFor(View v) {
+        int index = indexOf(v);
+        //noinspection unchecked
+        T drawable = (T) drawables[index];
         if (drawable == null) {
             int scrapSize = scrap.size();
             // ConstantState is not generic, unfortunately:
             //noinspection unchecked
-            drawables.put(
-                key,
-                drawable = scrapSize == 0 ? (T) factory.newDrawable().mutate() : scrap.remove(scrapSize - 1)
-            );
+            drawable = scrapSize == 0 ? (T) factory.newDrawable().mutate() : scrap.remove(scrapSize - 1);
+            if (2 * (size + 1) > views.length) {
+                grow();
+                index = indexOf(v);
+            }
+            views[index] = v;
+            drawables[index] = drawable;
+            size++;
         }
+        stamps[index] = generation;
         return drawable;
     }
+
+    /** Returns an object attached to the given view, or null. Extras are dropped when the view goes away. */
+    Object extra(View v) {
+        return extras[indexOf(v)];
+    }
+    /** Attaches an object to the given view, which must have a drawable. */
+    void extra(View v, Object extra) {
+        int index = indexOf(v);
+        if (views[index] == null) throw new IllegalStateException();
+        extras[index] = extra;
+    }
+
+    /** Returns the slot of the given view, or the empty slot where it should be inserted. */
+    private int indexOf(View v) {
+        View[] views = this.views;
+        int mask = views.length - 1;
+        int index = hash(v) & mask;
+        View at;
+        while ((at = views[index]) != null && at != v)
+            index = (index + 1) & mask;
+        return index;
+    }
+    private static int hash(View v) {
+        int h = System.identityHashCode(v);
+        return h ^ (h >>> 16);
+    }
+
+    private void removeAt(int hole) {
+        View[] views = this.views;
+        int mask = views.length - 1;
+        // shift back subsequent entries of the same cluster which are not at their home positions
+        for (int i = (hole + 1) & mask; views[i] != null; i = (i + 1) & mask) {
+            int home = hash(views[i]) & mask;
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                views[hole] = views[i];
+                drawables[hole] = drawables[i];
+                extras[hole] = extras[i];
+                stamps[hole] = stamps[i];
+                hole = i;
+            }
+        }
+        views[hole] = null;
+        drawables[hole] = null;
+        extras[hole] = null;
+        size--;
+    }
+
+    private void grow() {
+        View[] oldViews = views;
+        Object[] oldDrawables = drawables;
+        Object[] oldExtras = extras;
+        int[] oldStamps = stamps;
+        int capacity = 2 * oldViews.length;
+        views = new View[capacity];
+        drawables = new Object[capacity];
+        extras = new Object[capacity];
+        stamps = new int[capacity];
+        for (int i = 0; i < oldViews.length; i++) {
+            View v = oldViews[i];
+            if (v != null) {
+                int index = indexOf(v);
+                views[index] = v;
+                drawables[index] = oldDrawables[i];
+                extras[index] = oldExtras[i];
+                stamps[index] = oldStamps[i];
+            }
+        }
+    }
 }
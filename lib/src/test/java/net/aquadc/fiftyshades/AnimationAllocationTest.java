@@ -0,0 +1,87 @@
+package net.aquadc.fiftyshades;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Animates shadow radius, offset, and bounds of gradient shadows, and checks that,
+ * once {@link ShaderCache} is warm, frames neither build shaders nor allocate on the Java heap.
+ * Robolectric's {@link Drawable#invalidateSelf()} allocates by itself, thus it is measured on a {@link ColorDrawable} and subtracted.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public final class AnimationAllocationTest {
+
+    private static final int FRAMES = 120;
+    /** JVM allocates on its own now and then, e.g. while warming up, thus a single clean attempt is enough. */
+    private static final int ATTEMPTS = 10;
+
+    @Test public void rectShadow() {
+        assertAnimationAllocationFree(new RectShadow(8, new ShadowSpec(0f, 0f, 4f, 0x66000000)));
+    }
+
+    @Test public void rectInnerShadow() {
+        assertAnimationAllocationFree(new RectInnerShadow(8, new ShadowSpec(0f, 0f, 4f, 0x66000000)));
+    }
+
+    private static void assertAnimationAllocationFree(Shadow shadow) {
+        Canvas canvas = new Canvas(Bitmap.createBitmap(256, 256, Bitmap.Config.ARGB_8888));
+        animate(shadow, canvas); // warm caches up
+
+        Invalidations invalidations = new Invalidations();
+        shadow.setCallback(invalidations);
+        Drawable reference = new ColorDrawable();
+        reference.setCallback(new Invalidations());
+        long misses = ShaderCache.missCount();
+        long excess = -1;
+        for (int attempt = 0; attempt < ATTEMPTS && excess != 0; attempt++) {
+            invalidations.count = 0;
+            long allocated = allocatedBytes();
+            animate(shadow, canvas);
+            allocated = allocatedBytes() - allocated;
+
+            long invalidating = allocatedBytes();
+            for (int i = 0; i < invalidations.count; i++) reference.invalidateSelf();
+            invalidating = allocatedBytes() - invalidating;
+
+            excess = allocated - invalidating;
+        }
+
+        assertEquals("shaders built", 0, ShaderCache.missCount() - misses);
+        assertEquals("bytes allocated", 0, excess);
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+            .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static void animate(Shadow shadow, Canvas canvas) {
+        for (int frame = 0; frame < FRAMES; frame++) {
+            float t = frame / (float) FRAMES;
+            shadow.shadowRadius(4f + 20f * t).shadowDx(6f * t).shadowDy(10f * t);
+            int size = 40 + frame;
+            shadow.setBounds(48, 48, 48 + size, 48 + size / 2);
+            shadow.draw(canvas);
+        }
+    }
+
+    private static final class Invalidations implements Drawable.Callback {
+        int count;
+        @Override public void invalidateDrawable(Drawable who) { count++; }
+        @Override public void scheduleDrawable(Drawable who, Runnable what, long when) { }
+        @Override public void unscheduleDrawable(Drawable who, Runnable what) { }
+    }
+}
@@ -0,0 +1,123 @@
+package net.aquadc.fiftyshades;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.RenderNode;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.ParameterizedRobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares shadows drawn with platform blurs against the same shadows drawn with gradients.
+ * Whatever {@link ShadowBackend#AUTO} picks must look like gradients within parity tolerance.
+ */
+@RunWith(ParameterizedRobolectricTestRunner.class)
+@Config(sdk = 34)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public final class BackendParityTest {
+
+    private static final int MARGIN = 40, WIDTH = 96, HEIGHT = 64, CORNERS = 12;
+    /**
+     * Per-pixel and average alpha difference of a backend which looks the same as gradients.
+     * Gradients follow a Gaussian bell rather than the error function of a blurred edge,
+     * thus even with fitted σ they differ a bit across the whole shadow.
+     */
+    private static final int PARITY_MAX = 24;
+    private static final float PARITY_MEAN = 2f;
+    /** Average alpha difference of a backend which is at least placed and sized like gradients. */
+    private static final float SAME_SHADOW_MEAN = 8f;
+
+    @ParameterizedRobolectricTestRunner.Parameters(name = "{0}-{1}-{2}")
+    public static List<Object[]> cases() {
+        String[] shadowNames = { "plain", "offset", "spread" };
+        ShadowSpec[] shadows = {
+            new ShadowSpec(0f, 0f, 8f, 0xFF000000),
+            new ShadowSpec(3f, 5f, 12f, 0xFF000000),
+            new ShadowSpec(0f, 4f, 10f, 3f, 0xFF000000),
+        };
+        List<Object[]> cases = new ArrayList<>();
+        for (String canvas : new String[] { "software", "hardware" })
+            for (String kind : new String[] { "outer", "inner" })
+                for (int s = 0; s < shadows.length; s++)
+                    cases.add(new Object[] { canvas, kind, shadowNames[s], shadows[s] });
+        return cases;
+    }
+
+    private final boolean hardware, inner;
+    private final ShadowSpec shadow;
+
+    public BackendParityTest(String canvas, String kind, String shadowName, ShadowSpec shadow) {
+        this.hardware = canvas.equals("hardware");
+        this.inner = kind.equals("inner");
+        this.shadow = shadow;
+    }
+
+    @Test public void autoMatchesGradients() {
+        ShadowBackend resolved = resolveAuto();
+        if (hardware && !inner) assertEquals(ShadowBackend.BLUR_MASK_FILTER, resolved);
+
+        float[] diff = diff(ShadowBackend.AUTO);
+        assertTrue(resolved + " doesn't match gradients: alpha differs by up to " + diff[0], diff[0] <= PARITY_MAX);
+        assertTrue(resolved + " doesn't match gradients: alpha differs by " + diff[1] + " on average", diff[1] <= PARITY_MEAN);
+    }
+
+    @Test public void platformBlursDrawSameShadow() {
+        for (ShadowBackend backend : new ShadowBackend[] { ShadowBackend.BLUR_MASK_FILTER, ShadowBackend.RENDER_EFFECT }) {
+            float mean = diff(backend)[1];
+            assertTrue(backend + " draws a different shadow: alpha differs by " + mean + " on average", mean <= SAME_SHADOW_MEAN);
+        }
+    }
+
+    private ShadowBackend resolveAuto() {
+        if (!hardware)
+            return ShadowBackend.resolve(ShadowBackend.AUTO, new Canvas(Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888)), inner, shadow);
+        RenderNode node = new RenderNode("resolve");
+        Canvas canvas = node.beginRecording();
+        try {
+            return ShadowBackend.resolve(ShadowBackend.AUTO, canvas, inner, shadow);
+        } finally {
+            node.endRecording();
+        }
+    }
+
+    /** Returns maximal and average alpha difference between the given backend and gradients. */
+    private float[] diff(ShadowBackend backend) {
+        Bitmap expected = render(ShadowBackend.GRADIENTS);
+        Bitmap actual = render(backend);
+        int max = 0;
+        long sum = 0;
+        for (int y = 0; y < expected.getHeight(); y++)
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int diff = Math.abs((expected.getPixel(x, y) >>> 24) - (actual.getPixel(x, y) >>> 24));
+                max = Math.max(max, diff);
+                sum += diff;
+            }
+        return new float[] { max, sum / (float) (expected.getWidth() * expected.getHeight()) };
+    }
+
+    private Bitmap render(ShadowBackend backend) {
+        final Shadow drawable = (inner ? new RectInnerShadow(CORNERS, shadow) : new RectShadow(CORNERS, shadow)).backend(backend);
+        drawable.setBounds(MARGIN, MARGIN, MARGIN + WIDTH, MARGIN + HEIGHT);
+        int width = WIDTH + 2 * MARGIN, height = HEIGHT + 2 * MARGIN;
+        if (!hardware) {
+            Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            drawable.draw(new Canvas(bitmap));
+            return bitmap;
+        }
+
+        return Hardware.render(width, height, Color.TRANSPARENT, new Hardware.Scene() {
+            @Override public void draw(Canvas canvas) {
+                drawable.draw(canvas);
+            }
+        });
+    }
+}
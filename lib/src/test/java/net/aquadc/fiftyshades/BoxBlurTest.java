@@ -0,0 +1,121 @@
+package net.aquadc.fiftyshades;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares {@link BoxBlur} against a reference Gaussian blur, and its parallel path against the serial one.
+ */
+public final class BoxBlurTest {
+
+    /** Three boxes approximate Gaussians of sigma starting from this one. */
+    private static final float[] SIGMAS = { 1.5f, 3f, 5.1f, 8f, 17.3f, 40f };
+    /** Integer box widths can only approximate sigma, which biases masks that are all edges, like blurred small ones. */
+    private static final int MAX_ERROR = 6;
+    private static final double MEAN_ERROR = 3.5;
+
+    @Test public void boxRadiiMatchSigma() {
+        int[] radii = new int[BoxBlur.PASSES];
+        for (float sigma : SIGMAS) {
+            assertTrue(BoxBlur.boxRadii(sigma, radii));
+            double variance = 0;
+            for (int r : radii) {
+                int size = 2 * r + 1;
+                variance += (size * size - 1) / 12.0;
+            }
+            assertEquals("sigma of " + Arrays.toString(radii), sigma, Math.sqrt(variance), .1 * sigma);
+        }
+        assertFalse(BoxBlur.boxRadii(0f, radii));
+        assertFalse(BoxBlur.boxRadii(.1f, radii));
+    }
+
+    @Test public void approximatesGaussian() {
+        int size = 160;
+        for (float sigma : SIGMAS) {
+            byte[] mask = new byte[size * size];
+            for (int y = 50; y < 110; y++) Arrays.fill(mask, y * size + 40, y * size + 120, (byte) 0xFF);
+            int[] expected = gaussian(mask, size, size, size, sigma);
+            BoxBlur.blur(mask, size, size, size, sigma, false);
+            assertClose("sigma " + sigma, expected, mask, size, size, size);
+        }
+    }
+
+    @Test public void fadesAtEdges() {
+        int width = 64, height = 40, stride = 70;
+        for (float sigma : SIGMAS) {
+            byte[] mask = new byte[stride * height];
+            Arrays.fill(mask, (byte) 0x55);
+            for (int y = 0; y < height; y++) Arrays.fill(mask, y * stride, y * stride + width, (byte) 0xFF);
+            int[] expected = gaussian(mask, width, height, stride, sigma);
+            BoxBlur.blur(mask, width, height, stride, sigma, false);
+            assertClose("sigma " + sigma, expected, mask, width, height, stride);
+            for (int y = 0; y < height; y++) {
+                for (int x = width; x < stride; x++) assertEquals("padding", 0x55, mask[y * stride + x]);
+                for (int x = 0; x < width; x++) { // pixels outside are transparent on every side
+                    assertEquals(mask[y * stride + x], mask[y * stride + width - 1 - x]);
+                    assertEquals(mask[y * stride + x], mask[(height - 1 - y) * stride + x]);
+                }
+            }
+        }
+    }
+
+    @Test public void parallelEqualsSerial() {
+        int width = 300, height = 257, stride = 310;
+        byte[] mask = new byte[stride * height];
+        new Random(42).nextBytes(mask);
+        for (float sigma : SIGMAS) {
+            byte[] serial = mask.clone(), parallel = mask.clone();
+            BoxBlur.blur(serial, width, height, stride, sigma, false);
+            BoxBlur.blur(parallel, width, height, stride, sigma, true);
+            assertArrayEquals("sigma " + sigma, serial, parallel);
+        }
+    }
+
+    private static void assertClose(String message, int[] expected, byte[] actual, int width, int height, int stride) {
+        int max = 0;
+        long sum = 0;
+        for (int y = 0; y < height; y++)
+            for (int x = 0; x < width; x++) {
+                int diff = Math.abs((actual[y * stride + x] & 0xFF) - expected[y * stride + x]);
+                max = Math.max(max, diff);
+                sum += diff;
+            }
+        double mean = sum / (double) (width * height);
+        assertTrue(message + ": differs by up to " + max, max <= MAX_ERROR);
+        assertTrue(message + ": differs by " + mean + " on average", mean <= MEAN_ERROR);
+    }
+
+    /** Reference blur: convolution with a sampled Gaussian, treating pixels outside as transparent. */
+    private static int[] gaussian(byte[] mask, int width, int height, int stride, float sigma) {
+        int radius = (int) Math.ceil(4 * sigma);
+        double[] kernel = new double[2 * radius + 1];
+        double total = 0;
+        for (int i = -radius; i <= radius; i++) total += kernel[i + radius] = Math.exp(-i * i / (2.0 * sigma * sigma));
+        for (int i = 0; i < kernel.length; i++) kernel[i] /= total;
+
+        double[] rows = new double[stride * height];
+        for (int y = 0; y < height; y++)
+            for (int x = 0; x < width; x++) {
+                double sum = 0;
+                for (int k = -radius; k <= radius; k++)
+                    if (x + k >= 0 && x + k < width) sum += kernel[k + radius] * (mask[y * stride + x + k] & 0xFF);
+                rows[y * stride + x] = sum;
+            }
+        int[] out = new int[stride * height];
+        for (int y = 0; y < height; y++)
+            for (int x = 0; x < width; x++) {
+                double sum = 0;
+                for (int k = -radius; k <= radius; k++)
+                    if (y + k >= 0 && y + k < height) sum += kernel[k + radius] * rows[(y + k) * stride + x];
+                out[y * stride + x] = (int) Math.round(sum);
+            }
+        return out;
+    }
+}
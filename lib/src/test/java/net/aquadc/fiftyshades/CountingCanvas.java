@@ -0,0 +1,201 @@
+package net.aquadc.fiftyshades;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.NinePatch;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.RenderNode;
+import android.graphics.Shader;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Bitmap canvas which counts operations issued by drawables.
+ * Overloads delegating to each other are counted once.
+ * Shaders are counted as created when they weren't used during the previous frame.
+ * A canvas pretending to be hardware-accelerated counts display lists without drawing them.
+ */
+final class CountingCanvas extends Canvas {
+
+    int draws, saves, clips;
+    private Set<Shader> shaders = identitySet(), previousShaders = identitySet();
+    private int depth;
+    private final boolean hardware;
+
+    CountingCanvas(Bitmap bitmap) {
+        this(bitmap, false);
+    }
+    CountingCanvas(Bitmap bitmap, boolean hardware) {
+        super(bitmap);
+        this.hardware = hardware;
+    }
+
+    @Override public boolean isHardwareAccelerated() {
+        return hardware;
+    }
+
+    /** Starts counting next frame. */
+    void reset() {
+        draws = saves = clips = 0;
+        Set<Shader> used = shaders;
+        shaders = previousShaders;
+        previousShaders = used;
+        shaders.clear();
+    }
+
+    /** Shaders used during this frame but not during the previous one. */
+    int createdShaders() {
+        int created = 0;
+        for (Shader shader : shaders) if (!previousShaders.contains(shader)) created++;
+        return created;
+    }
+
+    /** Operation counts as "draws saves clips shaders", where shaders are created ones. */
+    String counts() {
+        return draws + " " + saves + " " + clips + " " + createdShaders();
+    }
+
+    private static Set<Shader> identitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<Shader, Boolean>());
+    }
+
+    private void drawing(@Nullable Paint paint) {
+        if (depth++ == 0) {
+            draws++;
+            if (paint != null && paint.getShader() != null) shaders.add(paint.getShader());
+        }
+    }
+    private void saving() { if (depth++ == 0) saves++; }
+    private void clipping() { if (depth++ == 0) clips++; }
+
+    // saves
+
+    @Override public int save() {
+        saving(); int count = super.save(); depth--; return count;
+    }
+    @Override public int saveLayer(@Nullable RectF bounds, @Nullable Paint paint) {
+        saving(); int count = super.saveLayer(bounds, paint); depth--; return count;
+    }
+    @Override public int saveLayer(float left, float top, float right, float bottom, @Nullable Paint paint) {
+        saving(); int count = super.saveLayer(left, top, right, bottom, paint); depth--; return count;
+    }
+    @Override public int saveLayerAlpha(@Nullable RectF bounds, int alpha) {
+        saving(); int count = super.saveLayerAlpha(bounds, alpha); depth--; return count;
+    }
+    @Override public int saveLayerAlpha(float left, float top, float right, float bottom, int alpha) {
+        saving(); int count = super.saveLayerAlpha(left, top, right, bottom, alpha); depth--; return count;
+    }
+
+    // clips
+
+    @Override public boolean clipRect(@NonNull RectF rect) {
+        clipping(); boolean r = super.clipRect(rect); depth--; return r;
+    }
+    @Override public boolean clipRect(@NonNull Rect rect) {
+        clipping(); boolean r = super.clipRect(rect); depth--; return r;
+    }
+    @Override public boolean clipRect(float left, float top, float right, float bottom) {
+        clipping(); boolean r = super.clipRect(left, top, right, bottom); depth--; return r;
+    }
+    @Override public boolean clipRect(int left, int top, int right, int bottom) {
+        clipping(); boolean r = super.clipRect(left, top, right, bottom); depth--; return r;
+    }
+    @Override public boolean clipOutRect(@NonNull RectF rect) {
+        clipping(); boolean r = super.clipOutRect(rect); depth--; return r;
+    }
+    @Override public boolean clipOutRect(@NonNull Rect rect) {
+        clipping(); boolean r = super.clipOutRect(rect); depth--; return r;
+    }
+    @Override public boolean clipPath(@NonNull Path path) {
+        clipping(); boolean r = super.clipPath(path); depth--; return r;
+    }
+    @Override public boolean clipOutPath(@NonNull Path path) {
+        clipping(); boolean r = super.clipOutPath(path); depth--; return r;
+    }
+
+    // draws
+
+    @Override public void drawPaint(@NonNull Paint paint) {
+        drawing(paint); super.drawPaint(paint); depth--;
+    }
+    @Override public void drawColor(int color) {
+        drawing(null); super.drawColor(color); depth--;
+    }
+    @Override public void drawRect(@NonNull RectF rect, @NonNull Paint paint) {
+        drawing(paint); super.drawRect(rect, paint); depth--;
+    }
+    @Override public void drawRect(@NonNull Rect r, @NonNull Paint paint) {
+        drawing(paint); super.drawRect(r, paint); depth--;
+    }
+    @Override public void drawRect(float left, float top, float right, float bottom, @NonNull Paint paint) {
+        drawing(paint); super.drawRect(left, top, right, bottom, paint); depth--;
+    }
+    @Override public void drawRoundRect(@NonNull RectF rect, float rx, float ry, @NonNull Paint paint) {
+        drawing(paint); super.drawRoundRect(rect, rx, ry, paint); depth--;
+    }
+    @Override public void drawRoundRect(float left, float top, float right, float bottom, float rx, float ry, @NonNull Paint paint) {
+        drawing(paint); super.drawRoundRect(left, top, right, bottom, rx, ry, paint); depth--;
+    }
+    @Override public void drawDoubleRoundRect(
+        @NonNull RectF outer, float outerRx, float outerRy, @NonNull RectF inner, float innerRx, float innerRy, @NonNull Paint paint
+    ) {
+        drawing(paint); super.drawDoubleRoundRect(outer, outerRx, outerRy, inner, innerRx, innerRy, paint); depth--;
+    }
+    @Override public void drawOval(@NonNull RectF oval, @NonNull Paint paint) {
+        drawing(paint); super.drawOval(oval, paint); depth--;
+    }
+    @Override public void drawOval(float left, float top, float right, float bottom, @NonNull Paint paint) {
+        drawing(paint); super.drawOval(left, top, right, bottom, paint); depth--;
+    }
+    @Override public void drawCircle(float cx, float cy, float radius, @NonNull Paint paint) {
+        drawing(paint); super.drawCircle(cx, cy, radius, paint); depth--;
+    }
+    @Override public void drawArc(@NonNull RectF oval, float startAngle, float sweepAngle, boolean useCenter, @NonNull Paint paint) {
+        drawing(paint); super.drawArc(oval, startAngle, sweepAngle, useCenter, paint); depth--;
+    }
+    @Override public void drawArc(
+        float left, float top, float right, float bottom, float startAngle, float sweepAngle, boolean useCenter, @NonNull Paint paint
+    ) {
+        drawing(paint); super.drawArc(left, top, right, bottom, startAngle, sweepAngle, useCenter, paint); depth--;
+    }
+    @Override public void drawPath(@NonNull Path path, @NonNull Paint paint) {
+        drawing(paint); super.drawPath(path, paint); depth--;
+    }
+    @Override public void drawBitmap(@NonNull Bitmap bitmap, float left, float top, @Nullable Paint paint) {
+        drawing(paint); super.drawBitmap(bitmap, left, top, paint); depth--;
+    }
+    @Override public void drawBitmap(@NonNull Bitmap bitmap, @Nullable Rect src, @NonNull RectF dst, @Nullable Paint paint) {
+        drawing(paint); super.drawBitmap(bitmap, src, dst, paint); depth--;
+    }
+    @Override public void drawBitmap(@NonNull Bitmap bitmap, @Nullable Rect src, @NonNull Rect dst, @Nullable Paint paint) {
+        drawing(paint); super.drawBitmap(bitmap, src, dst, paint); depth--;
+    }
+    @Override public void drawBitmap(@NonNull Bitmap bitmap, @NonNull Matrix matrix, @Nullable Paint paint) {
+        drawing(paint); super.drawBitmap(bitmap, matrix, paint); depth--;
+    }
+    @Override public void drawPatch(@NonNull NinePatch patch, @NonNull Rect dst, @Nullable Paint paint) {
+        drawing(paint); super.drawPatch(patch, dst, paint); depth--;
+    }
+    @Override public void drawPatch(@NonNull NinePatch patch, @NonNull RectF dst, @Nullable Paint paint) {
+        drawing(paint); super.drawPatch(patch, dst, paint); depth--;
+    }
+    @Override public void drawVertices(
+        @NonNull VertexMode mode, int vertexCount, @NonNull float[] verts, int vertOffset, @Nullable float[] texs, int texOffset,
+        @Nullable int[] colors, int colorOffset, @Nullable short[] indices, int indexOffset, int indexCount, @NonNull Paint paint
+    ) {
+        drawing(paint);
+        super.drawVertices(mode, vertexCount, verts, vertOffset, texs, texOffset, colors, colorOffset, indices, indexOffset, indexCount, paint);
+        depth--;
+    }
+    @Override public void drawRenderNode(@NonNull RenderNode renderNode) {
+        drawing(null); depth--; // bitmaps can't replay display lists, see Hardware
+    }
+}
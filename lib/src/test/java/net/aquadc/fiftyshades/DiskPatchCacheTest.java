@@ -0,0 +1,66 @@
+package net.aquadc.fiftyshades;
+
+import android.graphics.Color;
+import android.graphics.NinePatch;
+import android.graphics.Rect;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link DiskPatchCache} reads back what it wrote,
+ * and prunes only its own outdated entries from a directory which could be shared with other caches.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public final class DiskPatchCacheTest {
+
+    @Rule public final TemporaryFolder temp = new TemporaryFolder();
+
+    private static final ShadowSpec SHADOW = new ShadowSpec(0f, 2f, 6f, Color.BLACK);
+    private static final PatchCache.Key KEY = new PatchCache.Key(true, 0, Color.TRANSPARENT,
+        new RectSpec(Color.BLACK, 8), SHADOW, SHADOW.inferPaddings(), CornerSet.ALL);
+
+    @Test public void roundTrip() throws IOException {
+        DiskPatchCache cache = new DiskPatchCache(temp.getRoot(), 1 << 20);
+        write(cache);
+        NinePatch read = cache.read(KEY);
+        assertNotNull(read);
+        NinePatch patch = RectWithShadow.createShadowPatch(8, SHADOW, SHADOW.inferPaddings());
+        assertEquals(patch.getWidth(), read.getWidth());
+        assertEquals(patch.getHeight(), read.getHeight());
+        assertTrue(patch.getBitmap().sameAs(read.getBitmap()));
+    }
+
+    @Test public void prunesOnlyOwnVersions() throws IOException {
+        File root = temp.getRoot();
+        File unrelated = temp.newFolder("v2-thumbnails"), own = temp.newFolder("fiftyshades", "v0-old");
+        File ownNotVersion = temp.newFolder("fiftyshades", "videos");
+        assertTrue(new File(unrelated, "a").createNewFile());
+        assertTrue(new File(own, "b.patch").createNewFile());
+        assertTrue(new File(ownNotVersion, "c").createNewFile());
+
+        write(new DiskPatchCache(root, 1 << 20));
+        assertTrue(new File(unrelated, "a").exists());
+        assertTrue(new File(ownNotVersion, "c").exists());
+        assertFalse(own.exists());
+    }
+
+    private static void write(DiskPatchCache cache) {
+        cache.write(KEY, RectWithShadow.createShadowPatch(8, SHADOW, SHADOW.inferPaddings()),
+            RectWithShadow.shadowChunk(8, SHADOW, SHADOW.inferPaddings()));
+    }
+}
@@ -0,0 +1,160 @@
+package net.aquadc.fiftyshades;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.view.View;
+import android.view.ViewGroup;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.ParameterizedRobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Draws every drawable, and every mode of {@link RectItemsWithShadows} in a {@link RecyclerView},
+ * for a matrix of corner sets, shadows, and sizes through a {@link CountingCanvas}.
+ * Fails when a renderer issues more operations than its checked-in budget, or looks different from its golden image.
+ */
+@RunWith(ParameterizedRobolectricTestRunner.class)
+@Config(sdk = 34)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public final class DrawingBudgetTest {
+
+    private static final int MARGIN = 32; // shadows are drawn out of bounds
+    private static final int BG = 0xFFFAFAFA;
+    private static final RectSpec RECT = new RectSpec(Color.WHITE, 8, 0xFF3366CC, 1.5f);
+    private static final ShadowSpec INNER = new ShadowSpec(0f, 2f, 4f, 0x33000000);
+    private static final int ITEMS = 3;
+
+    enum Kind {
+        PATCH, MASK, RECT_SHADOW, RECT_INNER_SHADOW, MULTI_SHADOW,
+        /** Items at rest, drawn from a shared patch. */
+        DECOR,
+        /** The middle item is animated, thus drawn with a dynamic shadow. */
+        DECOR_ANIMATED,
+        DECOR_BATCHED,
+        /** Items recorded into RenderNodes on a hardware canvas. */
+        DECOR_NODES,
+        DECOR_INNER,
+        DECOR_COMBINED,
+    }
+
+    @ParameterizedRobolectricTestRunner.Parameters(name = "{0}")
+    public static List<Object[]> cases() {
+        String[] shadowNames = { "plain", "offset", "spread" };
+        ShadowSpec[] shadows = {
+            new ShadowSpec(0f, 0f, 8f, 0x66000000),
+            new ShadowSpec(3f, 5f, 12f, 0x66000000),
+            new ShadowSpec(0f, 4f, 10f, 3f, 0x66000000),
+        };
+        int[][] sizes = { { 64, 48 }, { 20, 14 } }; // regular and squeezed
+        List<Object[]> cases = new ArrayList<>();
+        for (Kind kind : Kind.values())
+            for (CornerSet corners : kind == Kind.PATCH ? CornerSet.values() : new CornerSet[] { CornerSet.ALL })
+                for (int s = 0; s < shadows.length; s++) {
+                    if ((kind == Kind.PATCH || kind == Kind.MASK) && shadows[s].spread != 0f) continue; // 9-patches ignore spread
+                    for (int[] size : sizes) {
+                        String name = kind.name().toLowerCase() + (kind == Kind.PATCH ? "-" + corners.name().toLowerCase() : "") +
+                            '-' + shadowNames[s] + '-' + size[0] + 'x' + size[1];
+                        cases.add(new Object[] { name, kind, corners, shadows[s], size[0], size[1] });
+                    }
+                }
+        return cases;
+    }
+
+    private final String name;
+    private final Kind kind;
+    private final CornerSet corners;
+    private final ShadowSpec shadow;
+    private final int width, height;
+
+    public DrawingBudgetTest(String name, Kind kind, CornerSet corners, ShadowSpec shadow, int width, int height) {
+        this.name = name;
+        this.kind = kind;
+        this.corners = corners;
+        this.shadow = shadow;
+        this.width = width;
+        this.height = height;
+    }
+
+    @Test public void draw() throws IOException {
+        boolean decor = kind.compareTo(Kind.DECOR) >= 0, hardware = kind == Kind.DECOR_NODES;
+        int frameWidth = width + 2 * MARGIN, frameHeight = decor ? ITEMS * (height + MARGIN) + MARGIN : height + 2 * MARGIN;
+        Hardware.Scene scene = decor ? decoration(frameWidth, frameHeight) : drawable();
+        Bitmap bitmap = Bitmap.createBitmap(frameWidth, frameHeight, Bitmap.Config.ARGB_8888);
+        CountingCanvas canvas = new CountingCanvas(bitmap, hardware);
+
+        bitmap.eraseColor(BG);
+        scene.draw(canvas); // warm caches up
+        bitmap.eraseColor(BG);
+        canvas.reset();
+        scene.draw(canvas);
+
+        Goldens.assertBudget(name, canvas.counts());
+        Goldens.assertImage(name, hardware ? Hardware.render(frameWidth, frameHeight, BG, scene) : bitmap, 2);
+    }
+
+    private Hardware.Scene drawable() {
+        final Drawable drawable;
+        switch (kind) {
+            case PATCH: drawable = RectWithShadow.createDrawable(BG, RECT, shadow, null, corners); break;
+            case MASK: drawable = new RectWithShadowMask(RECT, shadow); break;
+            case RECT_SHADOW: drawable = new RectShadow(RECT.cornerRadius, shadow); break;
+            case RECT_INNER_SHADOW: drawable = new RectInnerShadow(RECT.cornerRadius, shadow); break;
+            case MULTI_SHADOW: drawable = new MultiShadow(RECT.cornerRadius, shadow, new ShadowSpec(0f, 1f, 2f, 0x33000000)); break;
+            default: throw new AssertionError();
+        }
+        drawable.setBounds(MARGIN, MARGIN, MARGIN + width, MARGIN + height);
+        return new Hardware.Scene() {
+            @Override public void draw(Canvas canvas) {
+                drawable.draw(canvas);
+            }
+        };
+    }
+
+    private Hardware.Scene decoration(int frameWidth, int frameHeight) {
+        RectItemsWithShadows decoration;
+        switch (kind) {
+            case DECOR: case DECOR_ANIMATED: case DECOR_NODES: decoration = new RectItemsWithShadows(RECT, shadow); break;
+            case DECOR_BATCHED: decoration = new RectItemsWithShadows(RECT, shadow).batched(true); break;
+            case DECOR_INNER: decoration = new RectItemsWithShadows(RECT, shadow, true); break;
+            case DECOR_COMBINED: decoration = new RectItemsWithShadows(RECT, shadow, INNER); break;
+            default: throw new AssertionError();
+        }
+        final RecyclerView list = new RecyclerView(RuntimeEnvironment.getApplication());
+        list.setLayoutManager(new LinearLayoutManager(list.getContext()));
+        list.setAdapter(new RecyclerView.Adapter<RecyclerView.ViewHolder>() {
+            @Override public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+                View item = new View(parent.getContext());
+                RecyclerView.LayoutParams lp = new RecyclerView.LayoutParams(width, height);
+                lp.setMargins(MARGIN, MARGIN, MARGIN, 0);
+                item.setLayoutParams(lp);
+                return new RecyclerView.ViewHolder(item) { };
+            }
+            @Override public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+            }
+            @Override public int getItemCount() {
+                return ITEMS;
+            }
+        });
+        list.addItemDecoration(decoration);
+        list.measure(View.MeasureSpec.makeMeasureSpec(frameWidth, View.MeasureSpec.EXACTLY),
+            View.MeasureSpec.makeMeasureSpec(frameHeight, View.MeasureSpec.EXACTLY));
+        list.layout(0, 0, frameWidth, frameHeight);
+        if (kind == Kind.DECOR_ANIMATED) RectItemsWithShadows.DECOR_SHADOW_DY.set(list.getChildAt(1), shadow.dy + 2f);
+        return new Hardware.Scene() {
+            @Override public void draw(Canvas canvas) {
+                list.draw(canvas);
+            }
+        };
+    }
+}
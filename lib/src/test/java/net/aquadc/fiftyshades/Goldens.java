@@ -0,0 +1,122 @@
+package net.aquadc.fiftyshades;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Reference images and operation budgets checked in under src/test/resources.
+ * Re-record them after an intended change with {@code ./gradlew :lib:testDebugUnitTest -PrecordGoldens}
+ * and review the diff.
+ */
+final class Goldens {
+    private Goldens() {}
+
+    /** Resources directory to record into, or empty to verify. */
+    private static final String RECORD = System.getProperty("fiftyshades.record", "");
+    private static final String BUDGETS = "budgets.txt";
+
+    /**
+     * Asserts that no channel of any pixel differs from the golden image by more than tolerance.
+     */
+    static void assertImage(String name, Bitmap actual, int tolerance) throws IOException {
+        String path = "goldens/" + name + ".png";
+        if (!RECORD.isEmpty()) {
+            File file = file(path);
+            OutputStream out = new FileOutputStream(file);
+            try {
+                actual.compress(Bitmap.CompressFormat.PNG, 100, out);
+            } finally {
+                out.close();
+            }
+            return;
+        }
+
+        InputStream in = Goldens.class.getResourceAsStream(path);
+        assertNotNull("missing golden " + path + ", record it with -PrecordGoldens", in);
+        Bitmap expected;
+        try {
+            expected = BitmapFactory.decodeStream(in);
+        } finally {
+            in.close();
+        }
+        assertEquals(name + " width", expected.getWidth(), actual.getWidth());
+        assertEquals(name + " height", expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++)
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int e = expected.getPixel(x, y), a = actual.getPixel(x, y);
+                for (int shift = 0; shift < 32; shift += 8)
+                    if (Math.abs(((e >>> shift) & 0xFF) - ((a >>> shift) & 0xFF)) > tolerance)
+                        fail(name + " differs at (" + x + ", " + y + "): expected " +
+                            Integer.toHexString(e) + ", got " + Integer.toHexString(a));
+            }
+    }
+
+    /**
+     * Asserts that operation counts, as "draws saves clips shaders", don't exceed the budget of the given case.
+     */
+    static void assertBudget(String name, String counts) throws IOException {
+        Map<String, String> budgets = budgets();
+        if (!RECORD.isEmpty()) {
+            budgets.put(name, counts);
+            PrintWriter out = new PrintWriter(file(BUDGETS), "UTF-8");
+            try {
+                out.println("# case: draws saves clips created shaders, per frame with warm caches");
+                for (Map.Entry<String, String> e : budgets.entrySet()) out.println(e.getKey() + ": " + e.getValue());
+            } finally {
+                out.close();
+            }
+            return;
+        }
+
+        String budget = budgets.get(name);
+        assertNotNull("no budget for " + name + ", record it with -PrecordGoldens", budget);
+        String[] expected = budget.split(" "), actual = counts.split(" ");
+        String[] what = { "draws", "saves", "clips", "created shaders" };
+        for (int i = 0; i < what.length; i++)
+            assertTrue(name + ": " + actual[i] + " " + what[i] + " exceed budget of " + expected[i],
+                Integer.parseInt(actual[i]) <= Integer.parseInt(expected[i]));
+    }
+
+    private static Map<String, String> budgets() throws IOException {
+        TreeMap<String, String> budgets = new TreeMap<>();
+        InputStream in = RECORD.isEmpty()
+            ? Goldens.class.getResourceAsStream(BUDGETS)
+            : file(BUDGETS).exists() ? new FileInputStream(file(BUDGETS)) : null;
+        if (in == null) return budgets;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int colon = line.indexOf(':');
+                if (!line.startsWith("#") && colon > 0) budgets.put(line.substring(0, colon), line.substring(colon + 1).trim());
+            }
+        } finally {
+            reader.close();
+        }
+        return budgets;
+    }
+
+    private static File file(String path) {
+        File file = new File(RECORD, "net/aquadc/fiftyshades/" + path);
+        //noinspection ResultOfMethodCallIgnored
+        file.getParentFile().mkdirs();
+        return file;
+    }
+}
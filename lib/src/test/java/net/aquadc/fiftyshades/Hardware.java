@@ -0,0 +1,55 @@
+package net.aquadc.fiftyshades;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.HardwareRenderer;
+import android.graphics.PixelFormat;
+import android.graphics.RecordingCanvas;
+import android.graphics.RenderNode;
+import android.hardware.HardwareBuffer;
+import android.media.Image;
+import android.media.ImageReader;
+
+/**
+ * Renders a scene with {@link HardwareRenderer} and reads it back,
+ * which is the only way to see {@link RenderNode}s and {@link android.graphics.RenderEffect}s.
+ */
+final class Hardware {
+    private Hardware() {}
+
+    interface Scene {
+        void draw(Canvas canvas);
+    }
+
+    static Bitmap render(int width, int height, int background, Scene scene) {
+        RenderNode node = new RenderNode("scene");
+        node.setPosition(0, 0, width, height);
+        RecordingCanvas canvas = node.beginRecording();
+        try {
+            canvas.drawColor(background);
+            scene.draw(canvas);
+        } finally {
+            node.endRecording();
+        }
+        ImageReader reader = ImageReader.newInstance(width, height, PixelFormat.RGBA_8888, 1,
+            HardwareBuffer.USAGE_GPU_SAMPLED_IMAGE | HardwareBuffer.USAGE_GPU_COLOR_OUTPUT);
+        HardwareRenderer renderer = new HardwareRenderer();
+        try {
+            renderer.setSurface(reader.getSurface());
+            renderer.setContentRoot(node);
+            renderer.createRenderRequest().setWaitForPresent(true).syncAndDraw();
+            Image image = reader.acquireNextImage();
+            try {
+                Image.Plane plane = image.getPlanes()[0];
+                Bitmap bitmap = Bitmap.createBitmap(plane.getRowStride() / plane.getPixelStride(), height, Bitmap.Config.ARGB_8888);
+                bitmap.copyPixelsFromBuffer(plane.getBuffer());
+                return Bitmap.createBitmap(bitmap, 0, 0, width, height);
+            } finally {
+                image.close();
+            }
+        } finally {
+            renderer.destroy();
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package net.aquadc.fiftyshades;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.NinePatch;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.ParameterizedRobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares the shared shadow patch of {@link RectItemsWithShadows} against {@link RectShadow}
+ * which replaces it while an item is animated. Switching between them must not make the shadow pop.
+ */
+@RunWith(ParameterizedRobolectricTestRunner.class)
+@Config(sdk = 34)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public final class PatchParityTest {
+
+    private static final int MARGIN = 40;
+    /** Per-pixel and average alpha difference; only rounding may differ. */
+    private static final int MAX_DIFF = 2;
+    private static final float MEAN_DIFF = .5f;
+
+    @ParameterizedRobolectricTestRunner.Parameters(name = "{0}-{1}x{2}-corners{3}")
+    public static List<Object[]> cases() {
+        String[] shadowNames = { "plain", "offset", "wide" };
+        ShadowSpec[] shadows = {
+            new ShadowSpec(0f, 0f, 8f, 0xFF000000),
+            new ShadowSpec(3f, 5f, 12f, 0xFF000000),
+            new ShadowSpec(0f, 2f, 30f, 0xFF000000),
+        };
+        int[][] sizes = { { 96, 64 }, { 200, 48 }, { 160, 120 } };
+        List<Object[]> cases = new ArrayList<>();
+        for (int s = 0; s < shadows.length; s++)
+            for (int[] size : sizes)
+                for (int corners : new int[] { 0, 12 })
+                    cases.add(new Object[] { shadowNames[s], size[0], size[1], corners, shadows[s] });
+        return cases;
+    }
+
+    private final int width, height, cornerRadius;
+    private final ShadowSpec shadow;
+
+    public PatchParityTest(String name, int width, int height, int cornerRadius, ShadowSpec shadow) {
+        this.width = width;
+        this.height = height;
+        this.cornerRadius = cornerRadius;
+        this.shadow = shadow;
+    }
+
+    @Test public void patchLooksLikeDynamicShadow() {
+        Rect paddings = shadow.inferPaddings();
+        NinePatch patch = RectWithShadow.createShadowPatch(cornerRadius, shadow, paddings);
+        assumeTrue("items smaller than the patch get dynamic shadows",
+            width + paddings.left + paddings.right >= patch.getWidth() && height + paddings.top + paddings.bottom >= patch.getHeight());
+        Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        paint.setColor(shadow.color);
+        Bitmap patched = frame();
+        patch.draw(new Canvas(patched),
+            new Rect(MARGIN - paddings.left, MARGIN - paddings.top, MARGIN + width + paddings.right, MARGIN + height + paddings.bottom),
+            paint);
+
+        RectShadow drawable = new RectShadow(cornerRadius, shadow).backend(ShadowBackend.GRADIENTS);
+        drawable.setBounds(MARGIN, MARGIN, MARGIN + width, MARGIN + height);
+        Bitmap dynamic = frame();
+        drawable.draw(new Canvas(dynamic));
+
+        int max = 0;
+        long sum = 0;
+        for (int y = 0; y < patched.getHeight(); y++)
+            for (int x = 0; x < patched.getWidth(); x++) {
+                int diff = Math.abs(Color.alpha(patched.getPixel(x, y)) - Color.alpha(dynamic.getPixel(x, y)));
+                max = Math.max(max, diff);
+                sum += diff;
+            }
+        float mean = sum / (float) (patched.getWidth() * patched.getHeight());
+        assertTrue("differs by up to " + max, max <= MAX_DIFF);
+        assertTrue("differs by " + mean + " on average", mean <= MEAN_DIFF);
+    }
+
+    private Bitmap frame() {
+        return Bitmap.createBitmap(width + 2 * MARGIN, height + 2 * MARGIN, Bitmap.Config.ARGB_8888);
+    }
+}
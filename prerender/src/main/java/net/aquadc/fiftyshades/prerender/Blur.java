@@ -0,0 +1,116 @@
+package net.aquadc.fiftyshades.prerender;
+
+import java.util.Arrays;
+
+import static java.lang.Math.min;
+import static java.lang.Math.round;
+
+/**
+ * Single-threaded copy of BoxBlur of the library, so pre-rendered shadows look exactly like rendered on device.
+ * Methods having the same names are kept identical, LibrarySyncTest checks that.
+ */
+final class Blur {
+    private Blur() {}
+
+    static final int PASSES = 3;
+
+    /** Columns per vertical block. */
+    private static final int GRAIN = 32;
+
+    static float sigma(float radius) {
+        return radius > 0f ? .57735f * radius + .5f : 0f;
+    }
+
+    static boolean boxRadii(float sigma, int[] radii) {
+        if (sigma <= 0f) return false;
+        double ideal = Math.sqrt(12 * sigma * sigma / PASSES + 1);
+        int lower = (int) ideal;
+        if ((lower & 1) == 0) lower--;
+        int upper = lower + 2;
+        int m = (int) round((12 * sigma * sigma - PASSES * lower * lower - 4 * PASSES * lower - 3 * PASSES) / (-4.0 * lower - 4));
+        boolean any = false;
+        for (int i = 0; i < PASSES; i++) {
+            any |= (radii[i] = ((i < m ? lower : upper) - 1) / 2) > 0;
+        }
+        return any;
+    }
+
+    /** Blurs tightly packed alpha mask in place. Pixels outside of the mask are considered transparent. */
+    static void blur(byte[] alpha, int width, int height, float sigma) {
+        int[] radii = new int[PASSES];
+        if (width <= 0 || height <= 0 || !boxRadii(sigma, radii)) return;
+
+        horizontal(alpha, width, width, radii, 0, height);
+        for (int x = 0; x < width; x += GRAIN) vertical(alpha, width, height, width, radii, x, min(x + GRAIN, width));
+    }
+
+    private static int spill(int[] radii) {
+        int spill = 0;
+        for (int radius : radii) spill += radius;
+        return spill;
+    }
+
+    private static void horizontal(byte[] alpha, int width, int stride, int[] radii, int from, int till) {
+        int spill = spill(radii), length = width + 2 * spill;
+        int[] a = new int[length], b = new int[length];
+        for (int y = from; y < till; y++) {
+            int offset = y * stride;
+            Arrays.fill(a, 0);
+            for (int x = 0; x < width; x++) a[spill + x] = alpha[offset + x] & 0xFF;
+            for (int pass = 0; pass < PASSES; pass++) {
+                boolean even = (pass & 1) == 0;
+                boxLine(even ? a : b, even ? b : a, length, radii[pass]);
+            }
+            int[] result = (PASSES & 1) == 0 ? a : b;
+            for (int x = 0; x < width; x++) alpha[offset + x] = (byte) result[spill + x];
+        }
+    }
+    private static void boxLine(int[] src, int[] dst, int length, int radius) {
+        int size = radius + radius + 1;
+        int mul = (1 << 16) / size;
+        int sum = 0;
+        for (int i = 0, end = min(radius, length - 1); i <= end; i++) sum += src[i];
+        for (int i = 0; i < length; i++) {
+            dst[i] = (sum * mul + (1 << 15)) >>> 16;
+            int add = i + radius + 1, sub = i - radius;
+            if (add < length) sum += src[add];
+            if (sub >= 0) sum -= src[sub];
+        }
+    }
+
+    private static void vertical(byte[] alpha, int width, int height, int stride, int[] radii, int from, int till) {
+        int columns = till - from, spill = spill(radii), length = height + 2 * spill;
+        int[] a = new int[length * columns], b = new int[length * columns];
+        for (int y = 0; y < height; y++)
+            for (int x = 0, offset = y * stride + from, o = (spill + y) * columns; x < columns; x++)
+                a[o + x] = alpha[offset + x] & 0xFF;
+        int[] sums = new int[columns];
+        for (int pass = 0; pass < PASSES; pass++) {
+            boolean even = (pass & 1) == 0;
+            boxColumns(even ? a : b, even ? b : a, length, columns, radii[pass], sums);
+        }
+        int[] result = (PASSES & 1) == 0 ? a : b;
+        for (int y = 0; y < height; y++)
+            for (int x = 0, offset = y * stride + from, o = (spill + y) * columns; x < columns; x++)
+                alpha[offset + x] = (byte) result[o + x];
+    }
+    private static void boxColumns(int[] src, int[] dst, int length, int columns, int radius, int[] sums) {
+        int size = radius + radius + 1;
+        int mul = (1 << 16) / size;
+        Arrays.fill(sums, 0);
+        for (int y = 0, end = min(radius, length - 1); y <= end; y++)
+            for (int x = 0, o = y * columns; x < columns; x++)
+                sums[x] += src[o + x];
+        for (int y = 0; y < length; y++) {
+            for (int x = 0, o = y * columns; x < columns; x++)
+                dst[o + x] = (sums[x] * mul + (1 << 15)) >>> 16;
+            int add = y + radius + 1, sub = y - radius;
+            if (add < length)
+                for (int x = 0, o = add * columns; x < columns; x++)
+                    sums[x] += src[o + x];
+            if (sub >= 0)
+                for (int x = 0, o = sub * columns; x < columns; x++)
+                    sums[x] -= src[o + x];
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package net.aquadc.fiftyshades.prerender;
+
+import java.awt.Insets;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Mirrors CornerSet of the library: measures and lays out patches of each corner set the same way.
+ */
+enum Corners {
+    TOP_LEFT(1, 1, 0, 0, 0, 0, 0, 1),
+    TOP_RIGHT(0, 1, 1, 1, 0, 0, 0, 0),
+    BOTTOM_LEFT(0, 0, 0, 0, 0, 1, 1, 1),
+    BOTTOM_RIGHT(0, 0, 0, 1, 1, 1, 0, 0),
+    BOTH_LEFT(1, 1, 0, 0, 0, 1, 1, 1),
+    BOTH_TOP(1, 1, 1, 1, 0, 0, 0, 1),
+    BOTH_RIGHT(0, 1, 1, 1, 1, 1, 0, 0),
+    BOTH_BOTTOM(0, 0, 0, 1, 1, 1, 1, 1),
+    HORIZONTAL(0, 1, 0, 0, 0, 1, 0, 0),
+    VERTICAL(0, 0, 0, 1, 0, 0, 0, 1),
+    ALL(1, 1, 1, 1, 1, 1, 1, 1),
+    BETWEEN_BOTTOM_AND_TOP(1, 1, 1, 0, 1, 1, 1, 0),
+    BETWEEN_RIGHT_AND_LEFT(1, 0, 1, 1, 1, 0, 1, 1),
+    ;
+
+    static final int LEFT = 1, TOP = 2, RIGHT = 4, BOTTOM = 8;
+
+    private final int cornersAndEdges;
+    Corners(int tl, int t, int tr, int r, int br, int b, int bl, int l) {
+        cornersAndEdges = tl | (t << 1) | (tr << 2) | (r << 3) | (br << 4) | (b << 5) | (bl << 6) | (l << 7);
+    }
+
+    private static final int ANY_LEFT = (1 | (1 << 6) | (1 << 7));
+    private static final int ANY_RIGHT = ((1 << 2) | (1 << 3) | (1 << 4));
+    private static final int ANY_TOP = (1 | (1 << 1) | (1 << 2));
+    private static final int ANY_BOTTOM = ((1 << 4) | (1 << 5) | (1 << 6));
+
+    /** Sides having paddings. */
+    int sides() {
+        return ((cornersAndEdges & ANY_LEFT) != 0 ? LEFT : 0) | ((cornersAndEdges & ANY_TOP) != 0 ? TOP : 0) |
+            ((cornersAndEdges & ANY_RIGHT) != 0 ? RIGHT : 0) | ((cornersAndEdges & ANY_BOTTOM) != 0 ? BOTTOM : 0);
+    }
+    /** Sides which should be inset negatively to draw shadow out of bounds. */
+    int insetSides() {
+        int sides = sides();
+        if (this == BETWEEN_RIGHT_AND_LEFT) sides &= ~(LEFT | RIGHT);
+        else if (this == BETWEEN_BOTTOM_AND_TOP) sides &= ~(TOP | BOTTOM);
+        return sides;
+    }
+
+    int measureWidth(Insets paddings, int corner, float dx, float radius) {
+        int sides = sides();
+        return measure(corner, dx, radius, (sides & LEFT) != 0, (sides & RIGHT) != 0, paddings.left, paddings.right);
+    }
+    int measureHeight(Insets paddings, int corner, float dy, float radius) {
+        int sides = sides();
+        return measure(corner, dy, radius, (sides & TOP) != 0, (sides & BOTTOM) != 0, paddings.top, paddings.bottom);
+    }
+    private static int measure(int cornerRadius, float d, float r, boolean hasStart, boolean hasEnd, int start, int end) {
+        int dPos = max(0, ceil(d + r)), dNeg = min(0, ceil(d - r));
+        return (hasStart ? start + cornerRadius + dPos : 0) + 1 + (hasEnd ? -dNeg + cornerRadius + end : 0);
+    }
+
+    /** Shape bounds as left, top, right, bottom. Width or height is negative for BETWEEN sets. */
+    float[] layout(Insets paddings, int corner, float dx, float dy, float radius) {
+        int dxPos = max(0, ceil(dx + radius)), dxNeg = min(0, ceil(dx - radius)),
+            dyPos = max(0, ceil(dy + radius)), dyNeg = min(0, ceil(dy - radius));
+        int sides = sides();
+        float left = (sides & LEFT) != 0 ? paddings.left : -corner - dxPos;
+        float top = (sides & TOP) != 0 ? paddings.top : -corner - dyPos;
+        float[] shape = {
+            left, top,
+            left + corner + dxPos + 1 - dxNeg + corner,
+            top + corner + dyPos + 1 - dyNeg + corner,
+        };
+        if (this == BETWEEN_BOTTOM_AND_TOP) {
+            shape[3] = corner - dyNeg;
+            shape[1] = shape[3] + paddings.bottom + 1 + paddings.top;
+        } else if (this == BETWEEN_RIGHT_AND_LEFT) {
+            shape[2] = corner - dxNeg;
+            shape[0] = shape[2] + paddings.right + 1 + paddings.left;
+        }
+        return shape;
+    }
+
+    /** Positions of the stretchable column and row. */
+    int[] divs(Insets paddings, int corner, float dx, float dy, float radius) {
+        int dxPos = max(0, ceil(dx + radius)), dyPos = max(0, ceil(dy + radius));
+        int left = paddings.left + corner + dxPos;
+        int top = paddings.top + corner + dyPos;
+        switch (this) {
+            case TOP_LEFT: case BOTH_LEFT: case BOTH_TOP: case ALL: return new int[] { left, top };
+            case TOP_RIGHT: case BOTH_RIGHT: case HORIZONTAL: return new int[] { 0, top };
+            case BOTTOM_LEFT: case BOTH_BOTTOM: case VERTICAL: return new int[] { left, 0 };
+            case BOTTOM_RIGHT: return new int[] { 0, 0 };
+            case BETWEEN_BOTTOM_AND_TOP: return new int[] { left, -min(0, ceil(dy - radius)) + corner + paddings.bottom };
+            case BETWEEN_RIGHT_AND_LEFT: return new int[] { -min(0, ceil(dx - radius)) + corner + paddings.right, top };
+            default: throw new AssertionError();
+        }
+    }
+
+    /** Content padding of a patch, i.e. paddings of present sides. */
+    Insets padding(Insets paddings) {
+        int sides = sides();
+        return new Insets(
+            (sides & TOP) != 0 ? paddings.top : 0,
+            (sides & LEFT) != 0 ? paddings.left : 0,
+            (sides & BOTTOM) != 0 ? paddings.bottom : 0,
+            (sides & RIGHT) != 0 ? paddings.right : 0
+        );
+    }
+
+    /** Same as Numbers#ceil of the library. */
+    static int ceil(float f) {
+        int i = (int) f;
+        if (f > 0 && f > i) i++;
+        else if (f < 0 && f < i) i--;
+        return i;
+    }
+}
@@ -0,0 +1,77 @@
+package net.aquadc.fiftyshades.prerender;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Generates a class with resource IDs of pre-rendered styles and a factory of drawables with negative insets.
+ */
+final class LookupWriter {
+    private LookupWriter() {}
+
+    /**
+     * Generates the lookup class.
+     * @throws IllegalArgumentException if styles clash, e.g. cardSmall and card_small are both fiftyshades_card_small
+     */
+    static String write(String packageName, String className, String resourcePrefix, List<ShadowStyle> styles) {
+        Map<String, String> names = new HashMap<>();
+        for (ShadowStyle style : styles) {
+            String name = resourceName(resourcePrefix, style.getName()), clash = names.put(name, style.getName());
+            if (clash != null)
+                throw new IllegalArgumentException("styles '" + clash + "' and '" + style.getName() + "' are both named " + name);
+        }
+
+        StringBuilder sb = new StringBuilder()
+            .append("package ").append(packageName).append(";\n\n")
+            .append("import android.content.res.Resources;\n")
+            .append("import android.graphics.Rect;\n")
+            .append("import android.graphics.drawable.Drawable;\n")
+            .append("import android.graphics.drawable.InsetDrawable;\n\n")
+            .append("/**\n * Shadow styles pre-rendered at build time. Generated by net.aquadc.fiftyshades.prerender, do not edit.\n */\n")
+            .append("public final class ").append(className).append(" {\n")
+            .append("    private ").append(className).append("() {}\n\n");
+        for (ShadowStyle style : styles)
+            sb.append("    public static final int ").append(constant(style.getName()))
+                .append(" = R.drawable.").append(resourceName(resourcePrefix, style.getName())).append(";\n");
+
+        sb.append("\n    /**\n")
+            .append("     * Loads a pre-rendered style with negative insets to draw shadow out of bounds,\n")
+            .append("     * like RectWithShadow.createDrawable does with patches rendered on device.\n")
+            .append("     */\n")
+            .append("    @SuppressWarnings(\"deprecation\")\n")
+            .append("    public static Drawable drawable(Resources res, int style) {\n")
+            .append("        int sides = sides(style);\n")
+            .append("        Drawable d = res.getDrawable(style);\n")
+            .append("        Rect p = new Rect();\n")
+            .append("        d.getPadding(p); // 9-patch padding is scaled to device density along with the image\n")
+            .append("        return new InsetDrawable(d,\n")
+            .append("            (sides & ").append(Corners.LEFT).append(") != 0 ? -p.left : 0,\n")
+            .append("            (sides & ").append(Corners.TOP).append(") != 0 ? -p.top : 0,\n")
+            .append("            (sides & ").append(Corners.RIGHT).append(") != 0 ? -p.right : 0,\n")
+            .append("            (sides & ").append(Corners.BOTTOM).append(") != 0 ? -p.bottom : 0\n")
+            .append("        );\n")
+            .append("    }\n\n")
+            .append("    private static int sides(int style) {\n");
+        for (ShadowStyle style : styles)
+            sb.append("        if (style == ").append(constant(style.getName())).append(") return ")
+                .append(Corners.valueOf(style.getCorners()).insetSides()).append(";\n");
+        return sb.append("        throw new IllegalArgumentException(\"not a shadow style: \" + style);\n")
+            .append("    }\n")
+            .append("}\n")
+            .toString();
+    }
+
+    /** cardSmall, card_small -> fiftyshades_card_small */
+    static String resourceName(String prefix, String name) {
+        return prefix + snake(name).toLowerCase(Locale.ROOT);
+    }
+    /** cardSmall, card_small -> CARD_SMALL */
+    private static String constant(String name) {
+        return snake(name).toUpperCase(Locale.ROOT);
+    }
+    private static String snake(String name) {
+        return name.replaceAll("([a-z0-9])([A-Z])", "$1_$2");
+    }
+}
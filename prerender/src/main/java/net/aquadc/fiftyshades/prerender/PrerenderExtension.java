@@ -0,0 +1,41 @@
+package net.aquadc.fiftyshades.prerender;
+
+import org.gradle.api.Action;
+import org.gradle.api.NamedDomainObjectContainer;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+
+import javax.inject.Inject;
+import java.util.Arrays;
+
+/**
+ * The {@code fiftyShades} block: styles to pre-render and density buckets to render them for.
+ */
+public abstract class PrerenderExtension {
+
+    private final NamedDomainObjectContainer<ShadowStyle> styles;
+
+    @Inject public PrerenderExtension(ObjectFactory objects) {
+        styles = objects.domainObjectContainer(ShadowStyle.class, ShadowStyle::new);
+        getDensities().convention(Arrays.asList("mdpi", "hdpi", "xhdpi", "xxhdpi", "xxxhdpi"));
+        getClassName().convention("ShadowStyles");
+        getResourcePrefix().convention("fiftyshades_");
+    }
+
+    public NamedDomainObjectContainer<ShadowStyle> getStyles() {
+        return styles;
+    }
+    public void styles(Action<? super NamedDomainObjectContainer<ShadowStyle>> action) {
+        action.execute(styles);
+    }
+
+    /** Density buckets, e.g. xhdpi. */
+    public abstract ListProperty<String> getDensities();
+
+    /** Simple name of the generated lookup class which lives in the namespace of the module. */
+    public abstract Property<String> getClassName();
+
+    /** Prefix of drawable resource names. */
+    public abstract Property<String> getResourcePrefix();
+}
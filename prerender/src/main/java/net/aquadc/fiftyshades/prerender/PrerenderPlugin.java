@@ -0,0 +1,45 @@
+package net.aquadc.fiftyshades.prerender;
+
+import com.android.build.api.variant.AndroidComponentsExtension;
+import com.android.build.api.variant.SourceDirectories;
+import com.android.build.api.variant.Variant;
+import org.gradle.api.Action;
+import org.gradle.api.Plugin;
+import org.gradle.api.Project;
+import org.gradle.api.tasks.TaskProvider;
+
+import java.util.ArrayList;
+
+/**
+ * Pre-renders shadow styles declared in the {@code fiftyShades} block of an Android module
+ * into 9-patch resources, so they need no rendering at runtime.
+ */
+public final class PrerenderPlugin implements Plugin<Project> {
+
+    @Override public void apply(Project project) {
+        PrerenderExtension extension = project.getExtensions().create("fiftyShades", PrerenderExtension.class);
+        project.getPluginManager().withPlugin("com.android.base", plugin -> register(project, extension));
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static void register(Project project, PrerenderExtension extension) {
+        AndroidComponentsExtension components = project.getExtensions().getByType(AndroidComponentsExtension.class);
+        components.onVariants(components.selector().all(), (Action<Variant>) variant -> {
+            String name = variant.getName();
+            TaskProvider<PrerenderTask> task = project.getTasks().register(
+                "prerender" + Character.toUpperCase(name.charAt(0)) + name.substring(1) + "Shadows", PrerenderTask.class,
+                t -> {
+                    t.getStyles().set(project.provider(() -> new ArrayList<>(extension.getStyles())));
+                    t.getDensities().set(extension.getDensities());
+                    t.getPackageName().set(variant.getNamespace());
+                    t.getClassName().set(extension.getClassName());
+                    t.getResourcePrefix().set(extension.getResourcePrefix());
+                }
+            );
+            SourceDirectories.Layered res = variant.getSources().getRes();
+            SourceDirectories.Flat java = variant.getSources().getJava();
+            if (res != null) res.addGeneratedSourceDirectory(task, PrerenderTask::getResOutput);
+            if (java != null) java.addGeneratedSourceDirectory(task, PrerenderTask::getJavaOutput);
+        });
+    }
+}
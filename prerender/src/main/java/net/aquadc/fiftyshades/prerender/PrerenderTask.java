@@ -0,0 +1,45 @@
+package net.aquadc.fiftyshades.prerender;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.workers.WorkerExecutor;
+
+import javax.inject.Inject;
+
+/**
+ * Pre-renders {@link ShadowStyle}s, see {@link RenderShadows}.
+ * Rendering is isolated in a worker process, so headless Java2D doesn't affect the Gradle daemon.
+ */
+@CacheableTask public abstract class PrerenderTask extends DefaultTask {
+
+    @Input public abstract ListProperty<ShadowStyle> getStyles();
+    @Input public abstract ListProperty<String> getDensities();
+    @Input public abstract Property<String> getPackageName();
+    @Input public abstract Property<String> getClassName();
+    @Input public abstract Property<String> getResourcePrefix();
+
+    @OutputDirectory public abstract DirectoryProperty getResOutput();
+    @OutputDirectory public abstract DirectoryProperty getJavaOutput();
+
+    @Inject protected abstract WorkerExecutor getWorkerExecutor();
+
+    @TaskAction void render() {
+        getWorkerExecutor()
+            .processIsolation(spec -> spec.forkOptions(options -> options.systemProperty("java.awt.headless", "true")))
+            .submit(RenderShadows.class, parameters -> {
+                parameters.getStyles().set(getStyles());
+                parameters.getDensities().set(getDensities());
+                parameters.getPackageName().set(getPackageName());
+                parameters.getClassName().set(getClassName());
+                parameters.getResourcePrefix().set(getResourcePrefix());
+                parameters.getResOutput().set(getResOutput());
+                parameters.getJavaOutput().set(getJavaOutput());
+            });
+    }
+}
@@ -0,0 +1,86 @@
+package net.aquadc.fiftyshades.prerender;
+
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+
+import javax.imageio.ImageIO;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Renders {@link ShadowStyle}s into .9.png drawables of each density bucket and generates the lookup class.
+ * Runs in a separate process started by {@link PrerenderTask}, where Java2D works in headless mode.
+ */
+public abstract class RenderShadows implements WorkAction<RenderShadows.Parameters> {
+
+    public interface Parameters extends WorkParameters {
+        ListProperty<ShadowStyle> getStyles();
+        ListProperty<String> getDensities();
+        Property<String> getPackageName();
+        Property<String> getClassName();
+        Property<String> getResourcePrefix();
+        DirectoryProperty getResOutput();
+        DirectoryProperty getJavaOutput();
+    }
+
+    @Override public void execute() {
+        try {
+            render(getParameters());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void render(Parameters parameters) throws IOException {
+        List<ShadowStyle> styles = parameters.getStyles().get();
+        String prefix = parameters.getResourcePrefix().get();
+        String packageName = parameters.getPackageName().get(), className = parameters.getClassName().get();
+        String lookup = LookupWriter.write(packageName, className, prefix, styles); // fails on clashing names before rendering anything
+
+        File res = clean(parameters.getResOutput().get().getAsFile());
+        for (String bucket : parameters.getDensities().get()) {
+            float density = density(bucket);
+            File dir = new File(res, "drawable-" + bucket);
+            if (!dir.mkdirs()) throw new IOException("mkdirs " + dir);
+            for (ShadowStyle style : styles) {
+                File file = new File(dir, LookupWriter.resourceName(prefix, style.getName()) + ".9.png");
+                if (!ImageIO.write(Renderer.render(style, density), "png", file)) throw new IOException("no PNG writer");
+            }
+        }
+
+        File dir = new File(clean(parameters.getJavaOutput().get().getAsFile()), packageName.replace('.', File.separatorChar));
+        if (!dir.mkdirs()) throw new IOException("mkdirs " + dir);
+        Files.write(new File(dir, className + ".java").toPath(), lookup.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static File clean(File dir) throws IOException {
+        delete(dir);
+        if (!dir.mkdirs()) throw new IOException("mkdirs " + dir);
+        return dir;
+    }
+    private static void delete(File file) throws IOException {
+        File[] files = file.listFiles();
+        if (files != null) for (File child : files) delete(child);
+        if (file.exists() && !file.delete()) throw new IOException("delete " + file);
+    }
+
+    private static float density(String bucket) {
+        switch (bucket) {
+            case "ldpi": return .75f;
+            case "mdpi": return 1f;
+            case "tvdpi": return 1.33125f;
+            case "hdpi": return 1.5f;
+            case "xhdpi": return 2f;
+            case "xxhdpi": return 3f;
+            case "xxxhdpi": return 4f;
+            default: throw new IllegalArgumentException("unknown density bucket: " + bucket);
+        }
+    }
+}
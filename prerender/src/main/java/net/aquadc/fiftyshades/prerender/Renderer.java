@@ -0,0 +1,139 @@
+package net.aquadc.fiftyshades.prerender;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Insets;
+import java.awt.RenderingHints;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+
+import static java.lang.Math.max;
+import static java.lang.Math.round;
+import static net.aquadc.fiftyshades.prerender.Corners.ceil;
+
+/**
+ * Renders .9.png sources of shadow styles, like RectWithShadow#createPatch does on device.
+ * Uses Java2D in headless mode, thus runs on any build machine.
+ */
+final class Renderer {
+    private Renderer() {}
+
+    /**
+     * Renders a 9-patch image, including the 1px border with stretch and padding markers.
+     * @param density scale factor of the density bucket, e.g. 2 for xhdpi
+     */
+    static BufferedImage render(ShadowStyle style, float density) {
+        Corners corners = Corners.valueOf(style.getCorners());
+        int cornerRadius = round(style.getCornerRadius() * density);
+        float strokeWidth = style.getStrokeWidth() * density;
+        float dx = style.getShadowDx() * density, dy = style.getShadowDy() * density, radius = style.getShadowRadius() * density;
+        int corner = max(cornerRadius, ceil(strokeWidth));
+        Insets paddings = paddings(dx, dy, radius);
+
+        int width = corners.measureWidth(paddings, corner, dx, radius);
+        int height = corners.measureHeight(paddings, corner, dy, radius);
+        float[] shape = corners.layout(paddings, corner, dx, dy, radius);
+
+        BufferedImage patch = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = graphics(patch);
+        int bgColor = style.getBgColor();
+        if (bgColor != 0) {
+            g.setColor(new Color(bgColor, true));
+            g.fillRect(0, 0, width, height);
+        }
+        int fillColor = style.getFillColor();
+        int shadowColor = style.getShadowColor();
+        if ((shadowColor >>> 24) != 0) {
+            // ShadowLayer semantics: opaque shadow colour takes alpha from the paint
+            if ((shadowColor >>> 24) == 0xFF) shadowColor = (fillColor & 0xFF000000) | (shadowColor & 0xFFFFFF);
+            g.drawImage(shadow(width, height, shape, cornerRadius, dx, dy, radius, shadowColor), 0, 0, null);
+        }
+        g.setColor(new Color(fillColor, true));
+        fillRR(g, shape, cornerRadius, width, height);
+        if ((style.getStrokeColor() >>> 24) != 0 && strokeWidth > 0f) {
+            g.setColor(new Color(style.getStrokeColor(), true));
+            g.setStroke(new BasicStroke(strokeWidth));
+            drawRR(g, shape, cornerRadius, width, height, true);
+        }
+        g.dispose();
+
+        return ninePatch(patch, corners.divs(paddings, corner, dx, dy, radius), corners.padding(paddings));
+    }
+
+    /** Same as ShadowSpec#inferPaddings of the library. */
+    private static Insets paddings(float dx, float dy, float radius) {
+        int l, t, r, b;
+        l = t = r = b = ceil(radius);
+        int d;
+        if ((d = ceil(dx)) > 0) r += d; else l -= d;
+        if ((d = ceil(dy)) > 0) b += d; else t -= d;
+        return new Insets(t, l, b, r);
+    }
+
+    private static BufferedImage shadow(
+        int width, int height, float[] shape, int cornerRadius, float dx, float dy, float radius, int color
+    ) {
+        BufferedImage shape8888 = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = graphics(shape8888);
+        g.translate(dx, dy);
+        g.setColor(Color.BLACK);
+        fillRR(g, shape, cornerRadius, width, height);
+        g.dispose();
+
+        byte[] alpha = new byte[width * height];
+        int[] pixels = shape8888.getRGB(0, 0, width, height, null, 0, width);
+        for (int i = 0; i < alpha.length; i++) alpha[i] = (byte) (pixels[i] >>> 24);
+        Blur.blur(alpha, width, height, Blur.sigma(radius));
+
+        int a = color >>> 24, rgb = color & 0xFFFFFF;
+        for (int i = 0; i < alpha.length; i++) pixels[i] = (((alpha[i] & 0xFF) * a + 127) / 255) << 24 | rgb;
+        shape8888.setRGB(0, 0, width, height, pixels, 0, width);
+        return shape8888;
+    }
+
+    private static Graphics2D graphics(BufferedImage image) {
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+        return g;
+    }
+
+    private static void fillRR(Graphics2D g, float[] shape, int r, int width, int height) {
+        drawRR(g, shape, r, width, height, false);
+    }
+    /** Like RectWithShadow#drawRR: a shape with negative size is drawn as two halves sticking out of edges. */
+    private static void drawRR(Graphics2D g, float[] shape, int r, int width, int height, boolean stroke) {
+        float l = shape[0], t = shape[1], rt = shape[2], b = shape[3];
+        float w = rt - l, h = b - t;
+        if (w > 0f & h > 0f) {
+            rr(g, l, t, rt, b, r, stroke);
+        } else if (w < 0) {
+            rr(g, w, t, rt, b, r, stroke); // *minus* width
+            rr(g, l, t, width - w, b, r, stroke); // *plus* width
+        } else {
+            rr(g, l, h, rt, b, r, stroke);
+            rr(g, l, t, rt, height - h, r, stroke);
+        }
+    }
+    private static void rr(Graphics2D g, float l, float t, float r, float b, int radius, boolean stroke) {
+        RoundRectangle2D.Float rr = new RoundRectangle2D.Float(l, t, r - l, b - t, 2 * radius, 2 * radius);
+        if (stroke) g.draw(rr);
+        else g.fill(rr);
+    }
+
+    /** Adds 9-patch border: stretchable pixel on top and left, content area on bottom and right. */
+    private static BufferedImage ninePatch(BufferedImage patch, int[] divs, Insets padding) {
+        int width = patch.getWidth(), height = patch.getHeight();
+        BufferedImage image = new BufferedImage(width + 2, height + 2, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.drawImage(patch, 1, 1, null);
+        g.setColor(Color.BLACK);
+        g.fillRect(1 + divs[0], 0, 1, 1);
+        g.fillRect(0, 1 + divs[1], 1, 1);
+        g.fillRect(1 + padding.left, height + 1, max(1, width - padding.left - padding.right), 1);
+        g.fillRect(width + 1, 1 + padding.top, 1, max(1, height - padding.top - padding.bottom));
+        g.dispose();
+        return image;
+    }
+}
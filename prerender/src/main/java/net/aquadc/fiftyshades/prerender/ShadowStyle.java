@@ -0,0 +1,88 @@
+package net.aquadc.fiftyshades.prerender;
+
+import org.gradle.api.Named;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Declarative counterpart of RectSpec, ShadowSpec, and CornerSet.
+ * Sizes are in dp, colours are 0xAARRGGBB. Paddings are inferred from shadow, like ShadowSpec#inferPaddings does.
+ */
+public final class ShadowStyle implements Named, Serializable {
+
+    private final String name;
+    private int bgColor;
+    private int fillColor = 0xFFFFFFFF;
+    private float cornerRadius;
+    private int strokeColor;
+    private float strokeWidth;
+    private float shadowDx, shadowDy, shadowRadius;
+    private int shadowColor;
+    private String corners = Corners.ALL.name();
+
+    public ShadowStyle(String name) {
+        if (!name.matches("[a-z][A-Za-z0-9_]*"))
+            throw new IllegalArgumentException("style name must be a valid resource name, got '" + name + "'");
+        this.name = name;
+    }
+
+    @Override public String getName() { return name; }
+
+    // colours are longs because 0xFFFFFFFF literal is a long in Groovy
+    public int getBgColor() { return bgColor; }
+    public void setBgColor(long bgColor) { this.bgColor = (int) bgColor; }
+    public int getFillColor() { return fillColor; }
+    public void setFillColor(long fillColor) { this.fillColor = (int) fillColor; }
+    public float getCornerRadius() { return cornerRadius; }
+    public void setCornerRadius(float cornerRadius) { this.cornerRadius = nonNegative("cornerRadius", cornerRadius); }
+    public int getStrokeColor() { return strokeColor; }
+    public void setStrokeColor(long strokeColor) { this.strokeColor = (int) strokeColor; }
+    public float getStrokeWidth() { return strokeWidth; }
+    public void setStrokeWidth(float strokeWidth) { this.strokeWidth = nonNegative("strokeWidth", strokeWidth); }
+    public float getShadowDx() { return shadowDx; }
+    public void setShadowDx(float shadowDx) { this.shadowDx = finite("shadowDx", shadowDx); }
+    public float getShadowDy() { return shadowDy; }
+    public void setShadowDy(float shadowDy) { this.shadowDy = finite("shadowDy", shadowDy); }
+    public float getShadowRadius() { return shadowRadius; }
+    public void setShadowRadius(float shadowRadius) { this.shadowRadius = nonNegative("shadowRadius", shadowRadius); }
+    public int getShadowColor() { return shadowColor; }
+    public void setShadowColor(long shadowColor) { this.shadowColor = (int) shadowColor; }
+    /** Name of a CornerSet constant, ALL by default. */
+    public String getCorners() { return corners; }
+    public void setCorners(String corners) { this.corners = Corners.valueOf(corners).name(); }
+
+    private static float finite(String name, float value) {
+        if (Float.isNaN(value) || Float.isInfinite(value))
+            throw new IllegalArgumentException(name + " must be finite, got " + value);
+        return value;
+    }
+    private static float nonNegative(String name, float value) {
+        if (!(finite(name, value) >= 0f)) throw new IllegalArgumentException(name + " must be >= 0, got " + value);
+        return value;
+    }
+
+    @Override public boolean equals(Object o) {
+        ShadowStyle that;
+        return this == o || (o instanceof ShadowStyle &&
+            name.equals((that = (ShadowStyle) o).name) &&
+            bgColor == that.bgColor &&
+            fillColor == that.fillColor &&
+            cornerRadius == that.cornerRadius &&
+            strokeColor == that.strokeColor &&
+            strokeWidth == that.strokeWidth &&
+            shadowDx == that.shadowDx &&
+            shadowDy == that.shadowDy &&
+            shadowRadius == that.shadowRadius &&
+            shadowColor == that.shadowColor &&
+            corners.equals(that.corners)
+        );
+    }
+    @Override public int hashCode() {
+        return Objects.hash(name, bgColor, fillColor, cornerRadius, strokeColor, strokeWidth,
+            shadowDx, shadowDy, shadowRadius, shadowColor, corners);
+    }
+    @Override public String toString() {
+        return "ShadowStyle(" + name + ')';
+    }
+}
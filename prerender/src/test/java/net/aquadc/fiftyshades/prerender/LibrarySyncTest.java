@@ -0,0 +1,83 @@
+package net.aquadc.fiftyshades.prerender;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link Blur} and {@link Corners} copy the library code which depends on Android and thus can't be shared.
+ * Fails when the library changes and copies don't follow.
+ */
+public final class LibrarySyncTest {
+
+    private static final File LIB = new File(System.getProperty("fiftyshades.lib", "../lib/src/main/java"), "net/aquadc/fiftyshades");
+    private static final File OWN = new File("src/main/java/net/aquadc/fiftyshades/prerender");
+
+    @Test public void blurIsBoxBlur() throws IOException {
+        String lib = read(LIB, "BoxBlur.java"), own = read(OWN, "Blur.java");
+        assertEquals(field(lib, "PASSES"), field(own, "PASSES"));
+        for (String method : new String[] { "sigma", "boxRadii", "spill", "horizontal", "boxLine", "vertical", "boxColumns" })
+            assertEquals(method, method(lib, method), method(own, method));
+    }
+
+    @Test public void cornersAreCornerSet() throws IOException {
+        String lib = read(LIB, "CornerSet.java"), own = read(OWN, "Corners.java");
+        List<String> constants = constants(lib);
+        assertFalse(constants.isEmpty());
+        assertEquals(constants, constants(own));
+        for (String field : new String[] { "ANY_LEFT", "ANY_RIGHT", "ANY_TOP", "ANY_BOTTOM" })
+            assertEquals(field, field(lib, field), field(own, field));
+        assertEquals(method(lib, "measure"), method(own, "measure"));
+        assertEquals(method(read(LIB, "Numbers.java"), "ceil"), method(own, "ceil"));
+    }
+
+    private static String read(File dir, String name) throws IOException {
+        File file = new File(dir, name);
+        assertTrue("no " + file.getAbsolutePath(), file.isFile());
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8)
+            .replaceAll("//[^\n]*", ""); // comments may differ
+    }
+
+    /** Enum constants with their arguments. */
+    private static List<String> constants(String source) {
+        Matcher m = Pattern.compile("(?m)^\\s*([A-Z_]+\\([0-9, ]*\\))[,;]").matcher(source);
+        List<String> constants = new ArrayList<>();
+        while (m.find()) constants.add(m.group(1));
+        return constants;
+    }
+
+    /** Initializer of a static field. */
+    private static String field(String source, String name) {
+        Matcher m = Pattern.compile("static final int " + name + " = ([^;]+);").matcher(source);
+        assertTrue("no " + name, m.find());
+        return normalize(m.group(1));
+    }
+
+    /** Parameters and body of the first method with the given name, modifiers aside. */
+    private static String method(String source, String name) {
+        Matcher m = Pattern.compile("[\\w\\[\\]]+\\s+" + name + "\\s*\\(([^)]*)\\)\\s*\\{").matcher(source);
+        assertTrue("no " + name, m.find());
+        int depth = 1, i = m.end();
+        while (depth > 0) {
+            char c = source.charAt(i++);
+            if (c == '{') depth++;
+            else if (c == '}') depth--;
+        }
+        return normalize(m.group(1)) + ' ' + normalize(source.substring(m.end(), i));
+    }
+
+    private static String normalize(String code) {
+        return code.replaceAll("\\s+", " ").trim();
+    }
+}
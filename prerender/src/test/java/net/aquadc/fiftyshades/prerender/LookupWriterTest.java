@@ -0,0 +1,38 @@
+package net.aquadc.fiftyshades.prerender;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks resource names, constants, and inset sides in the generated lookup class.
+ */
+public final class LookupWriterTest {
+
+    @Test public void resourceNames() {
+        assertEquals("fiftyshades_card_small", LookupWriter.resourceName("fiftyshades_", "cardSmall"));
+        assertEquals("fiftyshades_card_small", LookupWriter.resourceName("fiftyshades_", "card_small"));
+        assertEquals("shadow_card2_big", LookupWriter.resourceName("shadow_", "card2Big"));
+    }
+
+    @Test public void constantsAndSides() {
+        ShadowStyle card = new ShadowStyle("cardSmall"), strip = new ShadowStyle("strip");
+        strip.setCorners("BETWEEN_RIGHT_AND_LEFT");
+        String java = LookupWriter.write("com.example", "ShadowStyles", "fiftyshades_", Arrays.asList(card, strip));
+
+        assertTrue(java, java.startsWith("package com.example;\n"));
+        assertTrue(java, java.contains("public final class ShadowStyles {\n"));
+        assertTrue(java, java.contains("public static final int CARD_SMALL = R.drawable.fiftyshades_card_small;\n"));
+        assertTrue(java, java.contains("public static final int STRIP = R.drawable.fiftyshades_strip;\n"));
+        assertTrue(java, java.contains("if (style == CARD_SMALL) return 15;\n")); // all sides
+        assertTrue(java, java.contains("if (style == STRIP) return 10;\n")); // top and bottom, left and right are stretched between items
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void clashingNames() {
+        LookupWriter.write("com.example", "ShadowStyles", "fiftyshades_",
+            Arrays.asList(new ShadowStyle("cardSmall"), new ShadowStyle("card_small")));
+    }
+}
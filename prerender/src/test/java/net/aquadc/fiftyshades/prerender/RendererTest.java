@@ -0,0 +1,88 @@
+package net.aquadc.fiftyshades.prerender;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks 9-patch markers and shadow of rendered styles.
+ */
+public final class RendererTest {
+
+    @Test public void card() {
+        BufferedImage image = Renderer.render(card(2f), 2f);
+        // xhdpi: corners of 16px, shadow radius of 12px offset by 4px, paddings are 12px and 16px at the bottom
+        assertEquals(12 + 16 + 12 + 1 + 12 + 16 + 12 + 2, image.getWidth());
+        assertEquals(12 + 16 + 16 + 1 + 8 + 16 + 16 + 2, image.getHeight());
+        int width = image.getWidth(), height = image.getHeight();
+        assertEquals("stretchable column", span(1 + 40, 1 + 41), markers(image, 0, true));
+        assertEquals("stretchable row", span(1 + 44, 1 + 45), markers(image, 0, false));
+        assertEquals("horizontal padding", span(1 + 12, width - 1 - 12), markers(image, height - 1, true));
+        assertEquals("vertical padding", span(1 + 12, height - 1 - 16), markers(image, width - 1, false));
+    }
+
+    @Test public void markersOfEveryCornerSet() {
+        for (Corners corners : Corners.values()) {
+            ShadowStyle style = card(0f);
+            style.setCorners(corners.name());
+            BufferedImage image = Renderer.render(style, 1.5f);
+            String stretch = markers(image, 0, true), row = markers(image, 0, false);
+            assertTrue(corners + ": " + stretch, stretch.matches("\\d+\\.\\.\\d+") && single(stretch));
+            assertTrue(corners + ": " + row, row.matches("\\d+\\.\\.\\d+") && single(row));
+            assertTrue(corners.name(), markers(image, image.getHeight() - 1, true).matches("\\d+\\.\\.\\d+"));
+            assertTrue(corners.name(), markers(image, image.getWidth() - 1, false).matches("\\d+\\.\\.\\d+"));
+        }
+    }
+
+    @Test public void shadowFadesOutSymmetrically() {
+        BufferedImage image = Renderer.render(card(0f), 2f);
+        int width = image.getWidth(), height = image.getHeight(), y = height / 2;
+        int previous = -1;
+        for (int x = 1; x <= 1 + 12; x++) { // from outer edge to the shape
+            int alpha = image.getRGB(x, y) >>> 24;
+            assertTrue("rises at " + x, alpha >= previous);
+            previous = alpha;
+        }
+        assertTrue("fades out at the edge: " + (image.getRGB(1, y) >>> 24), (image.getRGB(1, y) >>> 24) < 0x08);
+        for (int py = 1; py < height - 1; py++)
+            for (int x = 1; x < width - 1; x++) {
+                int a = image.getRGB(x, py) >>> 24, b = image.getRGB(width - 1 - x, py) >>> 24, c = image.getRGB(x, height - 1 - py) >>> 24;
+                assertTrue("mirrored at " + x + ", " + py, Math.abs(a - b) <= 1 && Math.abs(a - c) <= 1);
+            }
+    }
+
+    private static ShadowStyle card(float dy) {
+        ShadowStyle style = new ShadowStyle("card");
+        style.setCornerRadius(8f);
+        style.setShadowDy(dy);
+        style.setShadowRadius(6f);
+        style.setShadowColor(0x40000000);
+        return style;
+    }
+
+    /** Describes black markers on the given border line as from..till, and checks that other border pixels are transparent. */
+    private static String markers(BufferedImage image, int line, boolean row) {
+        int length = row ? image.getWidth() : image.getHeight(), from = -1, till = -1;
+        for (int i = 1; i < length - 1; i++) {
+            int argb = row ? image.getRGB(i, line) : image.getRGB(line, i);
+            if (argb == 0xFF000000) {
+                if (from < 0) from = i;
+                else assertEquals("gap in markers", till, i);
+                till = i + 1;
+            } else {
+                assertEquals("border pixel at " + i, 0, argb);
+            }
+        }
+        return span(from, till);
+    }
+    private static String span(int from, int till) {
+        return from + ".." + till;
+    }
+    private static boolean single(String span) {
+        String[] bounds = span.split("\\.\\.");
+        return Integer.parseInt(bounds[1]) - Integer.parseInt(bounds[0]) == 1;
+    }
+}